@@ -0,0 +1,75 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import com.google.appengine.api.datastore.Entity;
+import java.io.Serializable;
+
+/** 
+ * Read-only copy of a stored comment, safe to share between requests, unlike the
+ * Datastore entity it was read from.
+ */
+public final class Comment implements Serializable {
+  // Unchanged by the id, as comments cached without one still read back, with a null id.
+  private static final long serialVersionUID = 1L;
+
+  // Given once when posted, so that writing the comment again stores nothing new.
+  private final String id;
+  private final String username;
+  // When the comment was posted, in milliseconds since the epoch.
+  private final long createdAt;
+  private final String body;
+
+  public Comment(final String username, final long createdAt, final String body) {
+    this(null, username, createdAt, body);
+  }
+
+  public Comment(final String id, final String username, final long createdAt,
+                 final String body) {
+    this.id = id;
+    this.username = username;
+    this.createdAt = createdAt;
+    this.body = body;
+  }
+
+  public static Comment fromEntity(final Entity entity) {
+    Object createdAt = entity.getProperty(CommentStorage.CREATED_AT);
+
+    // Comments posted before they had ids were stored under numeric ones.
+    return new Comment(entity.getKey().getName(), (String) entity.getProperty("username"),
+                       createdAt == null ? 0 : (Long) createdAt,
+                       (String) entity.getProperty("body"));
+  }
+
+  /** 
+   * Returns the id the stores key the comment by, so that retrying a write that may have
+   * succeeded doesn't store it twice, or null for comments posted before ids existed.
+   */
+  public String getId() {
+    return id;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public long getCreatedAt() {
+    return createdAt;
+  }
+
+  public String getBody() {
+    return body;
+  }
+}
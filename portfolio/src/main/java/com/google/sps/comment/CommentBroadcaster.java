@@ -0,0 +1,138 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** 
+ * Fans the new comments of every section out to the subscribers of the section.
+ *
+ * Publishing never waits on a subscriber: every subscriber has its own bounded buffer, which
+ * it drains at its own pace once told there is something new. A subscriber too slow to keep
+ * its buffer from filling up is marked as overflowed instead, and is expected to drop and
+ * catch up from the store, rather than hold comments in memory on behalf of a dead client.
+ */
+public class CommentBroadcaster {
+  private final int bufferSize;
+  private final ConcurrentMap<String, Set<Subscription>> subscribers = new ConcurrentHashMap<>();
+
+  public CommentBroadcaster(final int bufferSize) {
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("The buffer must hold at least one comment");
+    }
+
+    this.bufferSize = bufferSize;
+  }
+
+  /** 
+   * Subscribes to the new comments of the section of the given kind, until the subscription
+   * is closed.
+   *
+   * @param onPublished is run, on the publishing thread, whenever comments were buffered or
+   *    the buffer overflowed. It should only schedule draining the subscription.
+   */
+  public Subscription subscribe(final String kind, final Runnable onPublished) {
+    Subscription subscription = new Subscription(kind, onPublished);
+    subscribers.computeIfAbsent(kind, section -> ConcurrentHashMap.newKeySet()).add(subscription);
+
+    return subscription;
+  }
+
+  /** 
+   * Hands new comments of a section, the oldest first, to all of its subscribers.
+   */
+  public void publish(final String kind, final List<Comment> comments) {
+    Set<Subscription> section = subscribers.get(kind);
+    if (section == null) {
+      return;
+    }
+
+    for (Subscription subscription : section) {
+      subscription.offer(comments);
+    }
+  }
+
+  /** 
+   * Returns the number of open subscriptions, over all the sections.
+   */
+  public int subscriberCount() {
+    int count = 0;
+    for (Set<Subscription> section : subscribers.values()) {
+      count += section.size();
+    }
+
+    return count;
+  }
+
+  /** 
+   * The buffer of new comments of one subscriber.
+   */
+  public final class Subscription implements AutoCloseable {
+    private final String kind;
+    private final Runnable onPublished;
+    private final BlockingQueue<Comment> buffer = new ArrayBlockingQueue<>(bufferSize);
+    private volatile boolean overflowed;
+
+    private Subscription(final String kind, final Runnable onPublished) {
+      this.kind = kind;
+      this.onPublished = onPublished;
+    }
+
+    /** 
+     * Takes the buffered comments, the oldest first.
+     */
+    public List<Comment> drain() {
+      List<Comment> comments = new ArrayList<>();
+      buffer.drainTo(comments);
+      return comments;
+    }
+
+    /** 
+     * Tells whether comments were dropped because the buffer was full.
+     */
+    public boolean isOverflowed() {
+      return overflowed;
+    }
+
+    @Override
+    public void close() {
+      Set<Subscription> section = subscribers.get(kind);
+      if (section != null) {
+        section.remove(this);
+      }
+    }
+
+    private void offer(final List<Comment> comments) {
+      if (overflowed) {
+        return;
+      }
+
+      for (Comment comment : comments) {
+        if (!buffer.offer(comment)) {
+          overflowed = true;
+          break;
+        }
+      }
+
+      onPublished.run();
+    }
+  }
+}
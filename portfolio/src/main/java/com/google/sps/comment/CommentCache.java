@@ -0,0 +1,143 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 
+ * Bounded, least-recently-used cache of the first comment page of the sections, so that a
+ * section is only read from Datastore again after a new comment was added to it.
+ *
+ * Every section carries a version, bumped by every invalidation. A page read from Datastore
+ * is only cached if the version didn't change meanwhile, so a reader racing a writer can't
+ * put a stale page back in the cache.
+ *
+ * Invalidations only reach the cache of the instance that handled the write, so every page is
+ * also tagged with the version of its section in the {@link SharedCommentCache}, and is only
+ * served while that version is still current, i.e. no instance changed the section since it
+ * was last checked.
+ */
+public class CommentCache {
+  private final int capacity;
+  private final Map<String, Entry> entries;
+  private final Map<String, Long> versions = new HashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public CommentCache(final int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("The cache must hold at least one section");
+    }
+
+    this.capacity = capacity;
+    this.entries = new LinkedHashMap<String, Entry>(capacity, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+        return size() > CommentCache.this.capacity;
+      }
+    };
+  }
+
+  /** 
+   * Returns the cached first page of a section, or null if it has to be read, e.g. because
+   * it was cached at another shared version.
+   */
+  public synchronized CommentPage get(final String section, final long sharedVersion) {
+    Entry entry = entries.get(section);
+
+    if (entry == null || entry.sharedVersion != sharedVersion) {
+      misses.incrementAndGet();
+      return null;
+    }
+
+    hits.incrementAndGet();
+    return entry.page;
+  }
+
+  /** 
+   * Counts a read the cache could not serve without looking it up, e.g. because the shared
+   * version of its section is unknown.
+   */
+  public void countMiss() {
+    misses.incrementAndGet();
+  }
+
+  /** 
+   * Returns the current version of a section, to be handed back to {@code put}.
+   */
+  public synchronized long version(final String section) {
+    Long version = versions.get(section);
+    return version == null ? 0 : version;
+  }
+
+  /** 
+   * Caches the first page of a section, read when the section was at {@code version} here,
+   * and at {@code sharedVersion} in the shared cache.
+   */
+  public synchronized void put(final String section, final long version,
+                               final long sharedVersion, final CommentPage page) {
+    if (version == version(section)) {
+      entries.put(section, new Entry(page, sharedVersion));
+    }
+  }
+
+  /** 
+   * Drops the cached page of a section, after a write to it.
+   */
+  public synchronized void invalidate(final String section) {
+    entries.remove(section);
+    versions.put(section, version(section) + 1);
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /** 
+   * Returns the share of reads served from the cache, 0 before the first read.
+   */
+  public double getHitRate() {
+    long hitCount = hits.get();
+    long total = hitCount + misses.get();
+
+    return total == 0 ? 0 : (double) hitCount / total;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("hits=%d misses=%d hitRate=%.3f", getHits(), getMisses(),
+                         getHitRate());
+  }
+
+  /** 
+   * A cached page, along with the shared version it was read at.
+   */
+  private static final class Entry {
+    private final CommentPage page;
+    private final long sharedVersion;
+
+    Entry(final CommentPage page, final long sharedVersion) {
+      this.page = page;
+      this.sharedVersion = sharedVersion;
+    }
+  }
+}
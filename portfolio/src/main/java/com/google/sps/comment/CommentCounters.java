@@ -0,0 +1,195 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import com.google.sps.config.Constants;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Transaction;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** 
+ * Number of comments of every section, kept in sharded counter entities. Every increment
+ * goes to a random shard in its own transaction, so bursts of comments on one section don't
+ * all contend for a single entity group.
+ *
+ * Reading sums the shards of all sections with one query, and keeps the result in memory for
+ * a short while, so badges on all thumbnails cost one lookup.
+ *
+ * Every shard also keeps when the newest comment it counted was posted, which tells whether
+ * an eventually consistent query already returns all the comments counted.
+ */
+public class CommentCounters {
+  private static final String SHARD_KIND = "CommentCounterShard";
+  private static final int MAX_RETRIES = 3;
+
+  private final DatastoreService storage;
+  private final String keyword;
+  private final long ttlMillis;
+  private volatile Map<String, Long> counts;
+  private volatile long countedAtMillis;
+
+  public CommentCounters(final DatastoreService storage, final String keyword,
+                         final long ttlMillis) {
+    this.storage = storage;
+    this.keyword = keyword;
+    this.ttlMillis = ttlMillis;
+  }
+
+  /** 
+   * Adds {@code delta} to the count of a section, given by its kind, e.g. "Comment3", for
+   * comments the newest of which was posted at {@code newest}, in epoch milliseconds.
+   *
+   * @throws ConcurrentModificationException if the shard kept changing under the transaction.
+   */
+  public void increment(final String kind, final long delta, final long newest) {
+    String id = kind.substring(keyword.length());
+    int shard = ThreadLocalRandom.current().nextInt(Constants.COUNTER_SHARDS);
+    Key key = KeyFactory.createKey(SHARD_KIND, kind + "-" + shard);
+
+    for (int attempt = 1; ; ++attempt) {
+      Transaction transaction = storage.beginTransaction();
+      try {
+        Entity counter;
+        try {
+          counter = storage.get(transaction, key);
+        } catch (EntityNotFoundException e) {
+          counter = new Entity(key);
+          counter.setProperty("section", id);
+          counter.setProperty("count", 0L);
+        }
+
+        counter.setProperty("count", (Long) counter.getProperty("count") + delta);
+        Long shardNewest = (Long) counter.getProperty("newest");
+        counter.setProperty("newest", shardNewest == null ? newest : Math.max(shardNewest, newest));
+        storage.put(transaction, counter);
+        transaction.commit();
+        break;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == MAX_RETRIES) {
+          throw e;
+        }
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+
+    // Lets this instance see its own comments before the cached counts expire.
+    Map<String, Long> current = counts;
+    if (current != null) {
+      Map<String, Long> updated = new HashMap<>(current);
+      updated.put(kind, updated.getOrDefault(kind, 0L) + delta);
+      counts = Collections.unmodifiableMap(updated);
+    }
+  }
+
+  /** 
+   * Returns the read-only count of every section, by kind, at most the TTL old.
+   */
+  public Map<String, Long> getCounts() {
+    Map<String, Long> current = counts;
+
+    if (current == null || System.currentTimeMillis() - countedAtMillis >= ttlMillis) {
+      Map<String, Long> summed = new HashMap<>();
+      for (int id = 1; id <= Constants.IMG_COUNT; ++id) {
+        summed.put(keyword + id, 0L);
+      }
+
+      for (Entity shard : storage.prepare(new Query(SHARD_KIND))
+                                 .asIterable(FetchOptions.Builder.withChunkSize(100))) {
+        String kind = keyword + shard.getProperty("section");
+        summed.put(kind, summed.getOrDefault(kind, 0L) + (Long) shard.getProperty("count"));
+      }
+
+      current = Collections.unmodifiableMap(summed);
+      counts = current;
+      countedAtMillis = System.currentTimeMillis();
+    }
+
+    return current;
+  }
+
+  /** 
+   * Returns the up-to-date count of a section, given by its kind, reading its shards by key
+   * in one batch instead of going through the TTL-cached counts.
+   */
+  public long getExactCount(final String kind) {
+    long total = 0;
+    for (Entity shard : storage.get(shardKeys(kind)).values()) {
+      total += (Long) shard.getProperty("count");
+    }
+
+    return total;
+  }
+
+  /** 
+   * Returns when the newest comment counted for a section was posted, in epoch milliseconds,
+   * read by key like {@link #getExactCount}, or null if its shards don't tell, e.g. right
+   * after a recount.
+   */
+  public Long getNewest(final String kind) {
+    Long newest = null;
+    for (Entity shard : storage.get(shardKeys(kind)).values()) {
+      Long shardNewest = (Long) shard.getProperty("newest");
+      if (shardNewest != null && (newest == null || shardNewest > newest)) {
+        newest = shardNewest;
+      }
+    }
+
+    return newest;
+  }
+
+  /** 
+   * Resets the counters of a section to its actual number of comments, counted with a
+   * keys-only query. Meant to be run once for the comments posted before counters existed,
+   * or after an increment failed. Returns the new count.
+   */
+  public long recount(final String id) {
+    int total = storage.prepare(new Query(keyword + id).setKeysOnly())
+                       .countEntities(FetchOptions.Builder.withDefaults());
+
+    for (int shard = 0; shard < Constants.COUNTER_SHARDS; ++shard) {
+      Entity counter = new Entity(SHARD_KIND, keyword + id + "-" + shard);
+      counter.setProperty("section", id);
+      counter.setProperty("count", shard == 0 ? (long) total : 0L);
+      storage.put(counter);
+    }
+
+    counts = null;
+    return total;
+  }
+
+  private static List<Key> shardKeys(final String kind) {
+    List<Key> keys = new ArrayList<>();
+    for (int shard = 0; shard < Constants.COUNTER_SHARDS; ++shard) {
+      keys.add(KeyFactory.createKey(SHARD_KIND, kind + "-" + shard));
+    }
+
+    return keys;
+  }
+}
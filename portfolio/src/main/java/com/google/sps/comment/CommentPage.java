@@ -0,0 +1,65 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** 
+ * One page of the comments of a section, along with the cursor the next page starts at, and
+ * the version of the section it was read at, if known.
+ */
+public final class CommentPage implements Serializable {
+  private static final long serialVersionUID = 2L;
+
+  private final List<Comment> comments;
+  private final String cursor;
+  // The number of comments of the section when the page was read, or -1 if unknown.
+  private final long version;
+
+  public CommentPage(final List<Comment> comments, final String cursor) {
+    this(comments, cursor, -1);
+  }
+
+  public CommentPage(final List<Comment> comments, final String cursor, final long version) {
+    this.comments = Collections.unmodifiableList(new ArrayList<>(comments));
+    this.cursor = cursor;
+    this.version = version;
+  }
+
+  /** 
+   * Returns the read-only comments of the page, the newest first.
+   */
+  public List<Comment> getComments() {
+    return comments;
+  }
+
+  /** 
+   * Returns the web-safe cursor of the next page, or null if this is the last page.
+   */
+  public String getCursor() {
+    return cursor;
+  }
+
+  /** 
+   * Returns the version of the section the page was read at, i.e. its number of comments
+   * then, or -1 if the page may not reflect that version.
+   */
+  public long getVersion() {
+    return version;
+  }
+}
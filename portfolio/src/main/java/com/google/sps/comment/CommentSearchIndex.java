@@ -0,0 +1,377 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** 
+ * In-memory inverted index over the username and body of the comments of all sections,
+ * ranking matches with BM25.
+ *
+ * Every comment gets a document number in the order it was indexed, so the posting list of
+ * a term only ever grows at its end. Postings are kept compressed, as variable-length deltas
+ * between document numbers, each followed by the term's frequency in the document.
+ *
+ * Comments are indexed as they are stored, and the whole index can be rebuilt from the store
+ * while it keeps being searched and updated, e.g. on startup.
+ */
+public class CommentSearchIndex {
+  // The usual BM25 parameters: term frequency saturation, and document length normalization.
+  private static final double K1 = 1.2;
+  private static final double B = 0.75;
+  // How long before a rebuild a comment may have been posted, yet only indexed during it.
+  private static final long REBUILD_RACE_MILLIS = 60_000;
+  // How long before the newest indexed comment of a section another one may have been posted,
+  // yet only reach the store after it: longer than the write-behind delay and the clock skew
+  // between instances.
+  private static final long CATCH_UP_WINDOW_MILLIS = 60_000;
+
+  private Map<String, Postings> postings = new HashMap<>();
+  private String[] kinds = new String[64];
+  private Comment[] comments = new Comment[64];
+  private int[] lengths = new int[64];
+  private int documentCount;
+  private long totalLength;
+  // The number of indexed comments of every section, the time of the newest one, and the
+  // fingerprints of the comments posted within the catch-up window before it, by time.
+  private Map<String, Long> sectionSizes = new HashMap<>();
+  private Map<String, Long> sectionNewest = new HashMap<>();
+  private Map<String, NavigableMap<Long, Set<String>>> sectionRecent = new HashMap<>();
+  // Comments indexed while a rebuild is running, null otherwise.
+  private List<SearchPage.Hit> indexedDuringRebuild;
+
+  /** 
+   * Indexes a new comment of the section of the given kind.
+   */
+  public synchronized void add(final String kind, final Comment comment) {
+    index(kind, comment);
+
+    if (indexedDuringRebuild != null) {
+      indexedDuringRebuild.add(new SearchPage.Hit(kind, comment, 0));
+    }
+  }
+
+  /** 
+   * Returns the time after which the comments of a section, in epoch milliseconds, have to be
+   * read back from the store to catch up with those other instances stored, or null to read
+   * them all. It lies a window before the newest indexed comment, as comments posted before
+   * it may reach the store after it.
+   */
+  public synchronized Long catchUpSince(final String kind) {
+    Long newest = sectionNewest.get(kind);
+    return newest == null ? null : newest - CATCH_UP_WINDOW_MILLIS - 1;
+  }
+
+  /** 
+   * Indexes a comment of the section of the given kind read back from the store, e.g. one
+   * posted through another instance, unless it is already indexed. Only comments posted
+   * since {@link #catchUpSince} can be told apart, older ones are never indexed this way.
+   *
+   * @return whether the comment was indexed.
+   */
+  public synchronized boolean addIfAbsent(final String kind, final Comment comment) {
+    Long newest = sectionNewest.get(kind);
+    if (newest != null) {
+      if (comment.getCreatedAt() < newest - CATCH_UP_WINDOW_MILLIS) {
+        return false;
+      }
+
+      Set<String> indexed = sectionRecent.get(kind).get(comment.getCreatedAt());
+      if (indexed != null && indexed.contains(fingerprint(kind, comment))) {
+        return false;
+      }
+    }
+
+    add(kind, comment);
+    return true;
+  }
+
+  /** 
+   * Replaces the index with one of all the comments of the given sections, read from the
+   * store page by page. Searches keep using the old index meanwhile, and comments added
+   * meanwhile are carried over, unless the rebuild already read them from the store.
+   *
+   * @throws IllegalStateException if another rebuild is running.
+   */
+  public void rebuild(final CommentStore store, final Collection<String> sectionKinds,
+                      final int pageSize) {
+    long startedAt = System.currentTimeMillis();
+    synchronized (this) {
+      if (indexedDuringRebuild != null) {
+        throw new IllegalStateException("The search index is already being rebuilt");
+      }
+      indexedDuringRebuild = new ArrayList<>();
+    }
+
+    CommentSearchIndex fresh = new CommentSearchIndex();
+    Set<String> recent = new HashSet<>();
+
+    try {
+      for (String kind : sectionKinds) {
+        String cursor = null;
+        do {
+          CommentPage page = store.query(kind, pageSize, cursor, null);
+          for (Comment comment : page.getComments()) {
+            fresh.index(kind, comment);
+            if (comment.getCreatedAt() >= startedAt - REBUILD_RACE_MILLIS) {
+              recent.add(fingerprint(kind, comment));
+            }
+          }
+          cursor = page.getCursor();
+        } while (cursor != null);
+      }
+    } catch (RuntimeException e) {
+      synchronized (this) {
+        indexedDuringRebuild = null;
+      }
+      throw e;
+    }
+
+    synchronized (this) {
+      for (SearchPage.Hit hit : indexedDuringRebuild) {
+        if (!recent.contains(fingerprint(hit.getKind(), hit.getComment()))) {
+          fresh.index(hit.getKind(), hit.getComment());
+        }
+      }
+      indexedDuringRebuild = null;
+
+      postings = fresh.postings;
+      kinds = fresh.kinds;
+      comments = fresh.comments;
+      lengths = fresh.lengths;
+      documentCount = fresh.documentCount;
+      totalLength = fresh.totalLength;
+      sectionSizes = fresh.sectionSizes;
+      sectionNewest = fresh.sectionNewest;
+      sectionRecent = fresh.sectionRecent;
+    }
+  }
+
+  /** 
+   * Returns the number of indexed comments.
+   */
+  public synchronized int size() {
+    return documentCount;
+  }
+
+  /** 
+   * Returns the number of indexed comments of a section.
+   */
+  public synchronized long size(final String kind) {
+    return sectionSizes.getOrDefault(kind, 0L);
+  }
+
+  /** 
+   * Returns when the newest indexed comment of a section was posted, in epoch milliseconds,
+   * or null if none was indexed.
+   */
+  public synchronized Long newest(final String kind) {
+    return sectionNewest.get(kind);
+  }
+
+  /** 
+   * Returns at most pageSize comments matching any term of the query, by decreasing BM25
+   * score, the newest first among equal scores, starting at the given cursor.
+   *
+   * @param cursor the cursor of a previous page of the same query, or null for the first page.
+   * @throws IllegalArgumentException if the cursor is malformed or pageSize is not positive.
+   */
+  public synchronized SearchPage search(final String query, final int pageSize,
+                                        final String cursor) {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("The page size must be positive");
+    }
+
+    int offset = cursor == null ? 0 : Integer.parseInt(cursor);
+    if (offset < 0) {
+      throw new IllegalArgumentException("Unknown cursor: " + cursor);
+    }
+
+    Map<Integer, Double> scores = new HashMap<>();
+    double averageLength = documentCount == 0 ? 0 : (double) totalLength / documentCount;
+
+    for (String term : new HashSet<>(tokenize(query))) {
+      Postings list = postings.get(term);
+      if (list == null) {
+        continue;
+      }
+
+      double idf = Math.log(1 + (documentCount - list.documentCount + 0.5) /
+                                (list.documentCount + 0.5));
+      int[] entry = new int[2];
+      for (int position = 0, document = 0; position < list.length; ) {
+        position = list.next(position, entry);
+        document += entry[0];
+
+        double frequency = entry[1];
+        double normalization = K1 * (1 - B + B * lengths[document] / averageLength);
+        scores.merge(document, idf * frequency * (K1 + 1) / (frequency + normalization),
+                     Double::sum);
+      }
+    }
+
+    // Keeps the offset + pageSize best matches, plus one to tell whether there are more.
+    Comparator<Map.Entry<Integer, Double>> ranking =
+        Comparator.comparing((Map.Entry<Integer, Double> match) -> match.getValue())
+                  .thenComparingLong(match -> comments[match.getKey()].getCreatedAt());
+    int kept = (int) Math.min((long) offset + pageSize + 1, Integer.MAX_VALUE);
+    PriorityQueue<Map.Entry<Integer, Double>> best = new PriorityQueue<>(ranking);
+    for (Map.Entry<Integer, Double> match : scores.entrySet()) {
+      best.add(match);
+      if (best.size() > kept) {
+        best.poll();
+      }
+    }
+
+    List<Map.Entry<Integer, Double>> ranked = new ArrayList<>(best);
+    ranked.sort(ranking.reversed());
+
+    List<SearchPage.Hit> hits = new ArrayList<>();
+    for (int rank = offset; rank < ranked.size() && hits.size() < pageSize; ++rank) {
+      int document = ranked.get(rank).getKey();
+      hits.add(new SearchPage.Hit(kinds[document], comments[document],
+                                  ranked.get(rank).getValue()));
+    }
+
+    return new SearchPage(hits, ranked.size() > offset + pageSize ?
+                                Integer.toString(offset + pageSize) : null);
+  }
+
+  private void index(final String kind, final Comment comment) {
+    if (documentCount == comments.length) {
+      kinds = Arrays.copyOf(kinds, documentCount * 2);
+      comments = Arrays.copyOf(comments, documentCount * 2);
+      lengths = Arrays.copyOf(lengths, documentCount * 2);
+    }
+
+    List<String> terms = tokenize(comment.getUsername());
+    terms.addAll(tokenize(comment.getBody()));
+
+    Map<String, Integer> frequencies = new LinkedHashMap<>();
+    for (String term : terms) {
+      frequencies.merge(term, 1, Integer::sum);
+    }
+
+    int document = documentCount++;
+    kinds[document] = kind;
+    comments[document] = comment;
+    lengths[document] = terms.size();
+    totalLength += terms.size();
+    sectionSizes.merge(kind, 1L, Long::sum);
+
+    long newest = sectionNewest.merge(kind, comment.getCreatedAt(), Math::max);
+    if (comment.getCreatedAt() >= newest - CATCH_UP_WINDOW_MILLIS) {
+      NavigableMap<Long, Set<String>> recent =
+          sectionRecent.computeIfAbsent(kind, section -> new TreeMap<>());
+      recent.computeIfAbsent(comment.getCreatedAt(), time -> new HashSet<>())
+            .add(fingerprint(kind, comment));
+      recent.headMap(newest - CATCH_UP_WINDOW_MILLIS, false).clear();
+    }
+
+    for (Map.Entry<String, Integer> term : frequencies.entrySet()) {
+      postings.computeIfAbsent(term.getKey(), key -> new Postings())
+              .append(document, term.getValue());
+    }
+  }
+
+  /** 
+   * Splits text into lower-case runs of letters and digits.
+   */
+  private static List<String> tokenize(final String text) {
+    List<String> terms = new ArrayList<>();
+    if (text == null) {
+      return terms;
+    }
+
+    StringBuilder term = new StringBuilder();
+    for (int i = 0; i <= text.length(); ++i) {
+      if (i < text.length() && Character.isLetterOrDigit(text.charAt(i))) {
+        term.append(text.charAt(i));
+      } else if (term.length() > 0) {
+        terms.add(term.toString().toLowerCase(Locale.ROOT));
+        term.setLength(0);
+      }
+    }
+
+    return terms;
+  }
+
+  private static String fingerprint(final String kind, final Comment comment) {
+    return kind + '\0' + comment.getCreatedAt() + '\0' + comment.getUsername() + '\0' +
+           comment.getBody();
+  }
+
+  /** 
+   * The documents a term occurs in, as varint-encoded (document delta, frequency) pairs.
+   */
+  private static final class Postings {
+    private byte[] bytes = new byte[8];
+    private int length;
+    private int lastDocument;
+    private int documentCount;
+
+    void append(final int document, final int frequency) {
+      writeVarint(documentCount == 0 ? document : document - lastDocument);
+      writeVarint(frequency);
+      lastDocument = document;
+      ++documentCount;
+    }
+
+    /** 
+     * Decodes the pair at the given position into {@code entry}, and returns the position of
+     * the next one.
+     */
+    int next(int position, final int[] entry) {
+      for (int field = 0; field < 2; ++field) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+          byte next = bytes[position++];
+          value |= (next & 0x7f) << shift;
+          if (next >= 0) {
+            break;
+          }
+        }
+        entry[field] = value;
+      }
+
+      return position;
+    }
+
+    private void writeVarint(int value) {
+      if (length + 5 > bytes.length) {
+        bytes = Arrays.copyOf(bytes, bytes.length * 2);
+      }
+
+      while ((value & ~0x7f) != 0) {
+        bytes[length++] = (byte) ((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      bytes[length++] = (byte) value;
+    }
+  }
+}
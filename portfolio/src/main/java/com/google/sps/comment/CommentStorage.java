@@ -17,70 +17,536 @@ package com.google.sps.comment;
 import com.google.sps.config.Constants;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.SortDirection;
-import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.text.SimpleDateFormat;  
-import java.util.Date;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.lang.NumberFormatException;
 
 /** 
- * Wrapper over Datastore. Allows for safe adding and retrieval of entities, requiring
- * a specific format, all fields as Strings: [author name], [entity body], [entity name],
- * entity's section id.
+ * Wrapper over a {@link CommentStore}, Datastore unless configured otherwise. Allows for safe
+ * adding and retrieval of entities, requiring a specific format, all fields as Strings:
+ * [author name], [entity body], [entity name], entity's section id.
  */
 public class CommentStorage {
-  private DatastoreService storage;
+  // Indexed time of the comment in epoch milliseconds, used for sorting and "since" queries.
+  public static final String CREATED_AT = "createdAt";
+  // The "dd/MM/yyyy hh:mm" string older comments were stored with, before CREATED_AT.
+  public static final String LEGACY_TIMESTAMP = "timestamp";
 
+  private static final CommentStorage INSTANCE = new CommentStorage();
+  // How many times a first page lagging behind its section's count is read before giving up.
+  private static final int CONSISTENT_READ_ATTEMPTS = 3;
+
+  private CommentStore store;
+  private CommentCache cache = new CommentCache(Constants.IMG_COUNT);
+  // Null unless the store is Datastore, as memcache only exists on App Engine, or one is given.
+  private SharedCommentCache sharedCache;
+  // Null unless the write-behind mode is enabled.
+  private WriteBehindQueue writeBehind;
+  private CommentSearchIndex searchIndex = new CommentSearchIndex();
+  // Bounds the comments this instance writes at once, so a burst is shed rather than queued
+  // up. Other instances have their own permits.
+  private Semaphore writePermits = new Semaphore(Constants.MAX_CONCURRENT_WRITES);
+  private CommentBroadcaster broadcaster = new CommentBroadcaster(Constants.STREAM_BUFFER_SIZE);
+
+  /** 
+   * Uses the store named by the storage system property: the embedded log store for "log",
+   * kept in the directory named by the log directory property, and Datastore otherwise.
+   */
   public CommentStorage() {
-    storage = DatastoreServiceFactory.getDatastoreService();
+    this(Constants.LOG_STORAGE.equals(System.getProperty(Constants.STORAGE_PROPERTY)) ?
+         openLogStore() : null);
+  }
+
+  /** 
+   * Uses the given store, e.g. to run on a plain JVM or to benchmark the caches without
+   * Datastore's latency, or Datastore if it is null.
+   */
+  public CommentStorage(final CommentStore store) {
+    this(store, null);
+  }
+
+  /** 
+   * Uses the given store and shared cache, e.g. to test several instances sharing a cache.
+   * A null store means Datastore, which comes with a memcache cache if none is given.
+   */
+  public CommentStorage(final CommentStore store, final SharedCommentCache sharedCache) {
+    if (store == null) {
+      DatastoreService storage = DatastoreServiceFactory.getDatastoreService();
+      this.store = new DatastoreCommentStore(storage,
+          DatastoreServiceFactory.getAsyncDatastoreService(),
+          new CommentCounters(storage, "Comment", Constants.COUNTS_TTL_MILLIS));
+      this.sharedCache = sharedCache != null ? sharedCache :
+          new SharedCommentCache(MemcacheServiceFactory.getMemcacheService(),
+                                 Constants.SHARED_CACHE_EXPIRATION_SECONDS,
+                                 Constants.SHARED_VERSION_TTL_MILLIS);
+    } else {
+      this.store = store;
+      this.sharedCache = sharedCache;
+    }
+
+    if (Boolean.getBoolean(Constants.WRITE_BEHIND_PROPERTY)) {
+      writeBehind = new WriteBehindQueue(this.store, Constants.WRITE_BEHIND_CAPACITY,
+                                         Constants.WRITE_BEHIND_BATCH_SIZE,
+                                         Constants.WRITE_BEHIND_MAX_DELAY_MILLIS,
+                                         this::onStored);
+      writeBehind.start();
+    }
+  }
+
+  /** 
+   * Returns the storage shared by the servlets, so that they all see the same cache.
+   */
+  public static CommentStorage getInstance() {
+    return INSTANCE;
+  }
+
+  /** 
+   * Returns the cache of the first comment pages, e.g. to report its hit rate.
+   */
+  public CommentCache getCache() {
+    return cache;
+  }
+
+  /** 
+   * Returns the memcache cache shared by all instances, behind the one of this instance, or
+   * null if the store is not Datastore.
+   */
+  public SharedCommentCache getSharedCache() {
+    return sharedCache;
+  }
+
+  /** 
+   * Drops the cached first page of a section, on this instance and in memcache, after its
+   * comments changed.
+   */
+  public void invalidate(final String kind) {
+    cache.invalidate(kind);
+    if (sharedCache != null) {
+      sharedCache.invalidate(kind);
+    }
+  }
+
+  /** 
+   * Returns the number of comments of every section, by id, possibly a little stale.
+   */
+  public Map<String, Long> getCounts(final String keyword) {
+    Map<String, Long> counts = new LinkedHashMap<>();
+    for (Map.Entry<String, Long> count : store.counts(sectionKinds(keyword)).entrySet()) {
+      counts.put(count.getKey().substring(keyword.length()), count.getValue());
+    }
+
+    return Collections.unmodifiableMap(counts);
+  }
+
+  /** 
+   * Returns the version of a section, which grows with every comment added to it, or null if
+   * the id is invalid. Comments are never deleted, so their count serves as the version: it is
+   * bumped only once the comment is stored, and is read without querying the comments. Pages
+   * carry the version they were read at, which may be older than this one.
+   */
+  public Long getVersion(final String keyword, final String id) {
+    if (!isValidId(id)) {
+      return null;
+    }
+
+    return store.count(keyword + id);
+  }
+
+  /** 
+   * Writes the comments still queued by the write-behind mode, if it is enabled, and closes
+   * the store.
+   */
+  public void close() {
+    if (writeBehind != null) {
+      writeBehind.close();
+    }
+    store.close();
   }
 
   /** 
    * If the entity id doesn't have a numeric format or is not within (0, IMG_COUNT],
-   * the request will be ignored.
+   * the request will be ignored. In write-behind mode, the comment is only queued, and
+   * becomes visible once its batch is written.
+   *
+   * @throws RejectedExecutionException if too many comments are already being written by
+   *    this instance, and none finished within a short wait.
    */
   public void addStorageEntry(final String username, final String body,
                               final String id,       final String entity) {
-    int idx;
-    try {
-      idx = Integer.parseInt(id);
-    } catch (NumberFormatException e) {
+    if (!isValidId(id)) {
       return;
     }
 
-    if (idx > 0 && idx <= Constants.IMG_COUNT) {
-      Entity commentEntity = new Entity(entity + id);
-      SimpleDateFormat dateFormatter = new SimpleDateFormat("dd/MM/yyyy hh:mm");  
+    String kind = entity + id;
+    Comment comment = new Comment(UUID.randomUUID().toString(),
+                                  username.equals("") ? "Anonymous" : username,
+                                  System.currentTimeMillis(),
+                                  body.equals("") ? "Nothing" : body);
 
-      commentEntity.setProperty("username", username.equals("") ? "Anonymous" : username);
-      commentEntity.setProperty("timestamp", dateFormatter.format(new Date()));
-      commentEntity.setProperty("body", body.equals("") ? "Nothing" : body);
+    if (writeBehind != null) {
+      writeBehind.enqueue(kind, comment);
+    } else {
+      Map<String, List<Comment>> stored =
+          Collections.singletonMap(kind, Collections.singletonList(comment));
 
-      storage.put(commentEntity);
+      acquireWritePermit();
+      try {
+        store.putAll(stored);
+      } finally {
+        writePermits.release();
+      }
+      onStored(stored);
     }
   }
 
+  /** 
+   * Returns the first page of comments, with the default page size.
+   */
+  public CommentPage getStorageEntries(final String keyword, final String id) {
+    return getStorageEntries(keyword, id, Constants.DEFAULT_PAGE_SIZE, null);
+  }
+
   /** 
    * If the entity id doesn't have a numeric format or is not within (0, IMG_COUNT], returns null.
+   * Otherwise returns at most pageSize comments, the newest first, starting at the given cursor.
+   * The first page with the default page size is served from the cache of this instance, then
+   * from the one shared through memcache, unless a comment was added since it was last read.
+   *
+   * @param cursor a web-safe cursor from a previous page, or null for the first page.
+   * @throws IllegalArgumentException if the cursor is malformed or pageSize is not positive.
    */
-  public Iterable<Entity> getStorageEntries(final String keyword, final String id) {
-    int idx;
-    try {
-      idx = Integer.parseInt(id);
-    } catch (NumberFormatException e) {
+  public CommentPage getStorageEntries(final String keyword, final String id,
+                                       final int pageSize, final String cursor) {
+    return getStorageEntries(keyword, id, pageSize, cursor, null);
+  }
+
+  /** 
+   * Same as above, only keeping the comments posted after {@code since}, in epoch
+   * milliseconds, unless it is null. Pages filtered that way are never cached.
+   */
+  public CommentPage getStorageEntries(final String keyword, final String id,
+                                       final int pageSize, final String cursor,
+                                       final Long since) {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("The page size must be positive");
+    }
+
+    if (!isValidId(id)) {
       return null;
     }
 
-    if (idx > 0 && idx <= Constants.IMG_COUNT) {
-      Query query = new Query(keyword + id).addSort("timestamp", SortDirection.DESCENDING);
-      PreparedQuery results = storage.prepare(query);
+    String kind = keyword + id;
+    boolean cacheable = cursor == null && since == null &&
+                        pageSize == Constants.DEFAULT_PAGE_SIZE;
+    boolean shared = cacheable && sharedCache != null;
+    // Read first, so a page this instance cached is dropped once any instance changes it.
+    long sharedVersion = shared ? sharedCache.version(kind) : 0;
+    boolean local = cacheable && (!shared || sharedVersion != 0);
+    CommentPage page = local ? cache.get(kind, sharedVersion) : null;
+    if (cacheable && !local) {
+      cache.countMiss();
+    }
 
-      return results.asIterable();
-    } else {
+    if (page == null) {
+      long version = cache.version(kind);
+      page = shared ? sharedCache.get(kind, sharedVersion) : null;
+
+      if (page == null) {
+        page = read(kind, pageSize, cursor, since);
+
+        if (shared && sharedVersion != 0 && page.getVersion() >= 0) {
+          sharedCache.put(kind, sharedVersion, page);
+        }
+      }
+
+      if (local && page.getVersion() >= 0) {
+        cache.put(kind, version, sharedVersion, page);
+      }
+    }
+
+    return page;
+  }
+
+  /** 
+   * Returns the first page of every given section, keyed by id, in the order of the ids.
+   * Sections missing from the cache of this instance are looked up in memcache all at once,
+   * and those missing from both are queried together, concurrently on Datastore.
+   * Returns null if any of the ids is invalid.
+   *
+   * @throws IllegalArgumentException if pageSize is not positive.
+   */
+  public Map<String, CommentPage> getStorageEntries(final String keyword,
+                                                    final Collection<String> ids,
+                                                    final int pageSize) {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("The page size must be positive");
+    }
+
+    boolean cacheable = pageSize == Constants.DEFAULT_PAGE_SIZE;
+    boolean sharing = cacheable && sharedCache != null;
+    Map<String, CommentPage> pages = new LinkedHashMap<>();
+    Set<String> kinds = new LinkedHashSet<>();
+
+    for (String id : ids) {
+      if (!isValidId(id)) {
+        return null;
+      }
+
+      // Keeps the position of the id, whatever cache its page ends up coming from.
+      pages.put(id, null);
+      kinds.add(keyword + id);
+    }
+
+    Map<String, Long> sharedVersions = sharing ? sharedCache.versions(kinds) :
+                                                 Collections.<String, Long>emptyMap();
+    Map<String, Long> versions = new HashMap<>();
+
+    for (String kind : kinds) {
+      long sharedVersion = sharedVersions.getOrDefault(kind, 0L);
+      CommentPage page = null;
+      if (cacheable && (!sharing || sharedVersion != 0)) {
+        page = cache.get(kind, sharedVersion);
+      } else if (cacheable) {
+        cache.countMiss();
+      }
+
+      if (page == null) {
+        versions.put(kind, cache.version(kind));
+      } else {
+        pages.put(kind.substring(keyword.length()), page);
+      }
+    }
+
+    Map<String, CommentPage> shared = new HashMap<>();
+    if (sharing && !versions.isEmpty()) {
+      Map<String, Long> wanted = new HashMap<>();
+      for (String kind : versions.keySet()) {
+        wanted.put(kind, sharedVersions.get(kind));
+      }
+      shared = sharedCache.getAll(wanted);
+    }
+
+    List<String> missing = new ArrayList<>();
+    for (String kind : versions.keySet()) {
+      if (!shared.containsKey(kind)) {
+        missing.add(kind);
+      }
+    }
+    // Counted first, so that no page is newer than the version it is given.
+    Map<String, Long> counts = new HashMap<>();
+    Map<String, Long> newest = new HashMap<>();
+    for (String kind : missing) {
+      counts.put(kind, store.count(kind));
+      newest.put(kind, store.newest(kind));
+    }
+    Map<String, CommentPage> queried = missing.isEmpty() ? Collections.emptyMap() :
+                                       store.queryAll(missing, pageSize);
+
+    for (String kind : versions.keySet()) {
+      CommentPage page = shared.get(kind);
+
+      if (page == null) {
+        page = versioned(queried.get(kind), counts.get(kind), newest.get(kind), pageSize, null);
+        if (page.getVersion() < 0) {
+          page = read(kind, pageSize, null, null);
+        }
+
+        if (sharing && sharedVersions.get(kind) != 0 && page.getVersion() >= 0) {
+          sharedCache.put(kind, sharedVersions.get(kind), page);
+        }
+      }
+
+      long sharedVersion = sharedVersions.getOrDefault(kind, 0L);
+      if (cacheable && (!sharing || sharedVersion != 0) && page.getVersion() >= 0) {
+        cache.put(kind, versions.get(kind), sharedVersion, page);
+      }
+      pages.put(kind.substring(keyword.length()), page);
+    }
+
+    return pages;
+  }
+
+  /** 
+   * Reads a page from the store, along with the version of its section. The version is read
+   * first, so the page can only be newer than it, never older. Datastore's queries may lag
+   * behind its counters though, so a first page holding fewer comments than the version says,
+   * or missing the newest comment counted, is read again, and left without a version if it
+   * never catches up.
+   */
+  private CommentPage read(final String kind, final int pageSize, final String cursor,
+                           final Long since) {
+    CommentPage page = null;
+
+    for (int attempt = 0; attempt < CONSISTENT_READ_ATTEMPTS; ++attempt) {
+      long count = store.count(kind);
+      Long newest = store.newest(kind);
+      page = versioned(store.query(kind, pageSize, cursor, since), count, newest, pageSize,
+                       cursor);
+
+      if (since != null || page.getVersion() >= 0) {
+        break;
+      }
+    }
+
+    return page;
+  }
+
+  /** 
+   * Gives a page the version its section was counted at before the page was read, unless it
+   * is a first page missing some of the comments counted: fewer than counted, or none as new
+   * as the newest one counted, if the store tells. A full page may lag behind too, so the size
+   * alone only tells for sections shorter than a page.
+   */
+  private static CommentPage versioned(final CommentPage page, final long count,
+                                       final Long newest, final int pageSize,
+                                       final String cursor) {
+    List<Comment> comments = page.getComments();
+    boolean complete = cursor != null ||
+                       comments.size() >= Math.min(count, pageSize) &&
+                       (newest == null || count == 0 ||
+                        !comments.isEmpty() && comments.get(0).getCreatedAt() >= newest);
+    return new CommentPage(page.getComments(), page.getCursor(), complete ? count : -1);
+  }
+
+  private static CommentStore openLogStore() {
+    try {
+      LogCommentStore store = LogCommentStore.open(
+          Paths.get(System.getProperty(Constants.LOG_DIRECTORY_PROPERTY, "comments")),
+          Constants.LOG_SEGMENT_BYTES, Constants.LOG_COMPACTION_THRESHOLD);
+      store.start(Constants.LOG_COMPACTION_INTERVAL_MILLIS);
+      return store;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not open the comment log", e);
+    }
+  }
+
+  /** 
+   * Returns at most pageSize comments of all the sections matching the query, the best match
+   * first, starting at the given cursor.
+   *
+   * @throws IllegalArgumentException if the cursor is malformed or pageSize is not positive.
+   */
+  public SearchPage search(final String keyword, final String query, final int pageSize,
+                           final String cursor) {
+    catchUpSearchIndex(keyword);
+    return searchIndex.search(query, pageSize, cursor);
+  }
+
+  /** 
+   * Rebuilds the search index from all the comments in the store, e.g. on startup.
+   */
+  public void rebuildSearchIndex(final String keyword) {
+    searchIndex.rebuild(store, sectionKinds(keyword), Constants.MAX_PAGE_SIZE);
+  }
+
+  /** 
+   * Indexes the comments other instances stored since the index last saw their sections,
+   * as told by the section counts. Comments are read back from a window before the newest
+   * indexed one of their section, as a comment may be timestamped before another yet reach
+   * the store after it, e.g. when written behind, and those already indexed are skipped. A
+   * section whose query still lags behind its count, as Datastore's may, is read again on the
+   * next search.
+   */
+  private synchronized void catchUpSearchIndex(final String keyword) {
+    for (Map.Entry<String, Long> count : store.counts(sectionKinds(keyword)).entrySet()) {
+      String kind = count.getKey();
+      if (count.getValue() <= searchIndex.size(kind)) {
+        continue;
+      }
+
+      Long since = searchIndex.catchUpSince(kind);
+      List<Comment> comments = new ArrayList<>();
+      String cursor = null;
+      do {
+        CommentPage page = store.query(kind, Constants.MAX_PAGE_SIZE, cursor, since);
+        comments.addAll(page.getComments());
+        cursor = page.getCursor();
+      } while (cursor != null);
+
+      // Oldest first, so the window doesn't move past comments still to be indexed.
+      Collections.reverse(comments);
+      for (Comment comment : comments) {
+        searchIndex.addIfAbsent(kind, comment);
+      }
+    }
+  }
+
+  /** 
+   * Subscribes to the comments added to a section through this instance from now on, or
+   * returns null if the id is invalid.
+   *
+   * @see CommentBroadcaster#subscribe
+   */
+  public CommentBroadcaster.Subscription subscribe(final String keyword, final String id,
+                                                   final Runnable onPublished) {
+    if (!isValidId(id)) {
       return null;
     }
+
+    return broadcaster.subscribe(keyword + id, onPublished);
+  }
+
+  private void acquireWritePermit() {
+    boolean acquired;
+    try {
+      acquired = writePermits.tryAcquire(Constants.WRITE_PERMIT_WAIT_MILLIS,
+                                         TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      acquired = false;
+    }
+
+    if (!acquired) {
+      throw new RejectedExecutionException("Too many comments are being written");
+    }
+  }
+
+  /** 
+   * Keeps the caches and the search index up to date once comments are stored, and publishes
+   * the comments to the subscribers of their section.
+   */
+  private void onStored(final Map<String, List<Comment>> stored) {
+    for (Map.Entry<String, List<Comment>> section : stored.entrySet()) {
+      invalidate(section.getKey());
+      for (Comment comment : section.getValue()) {
+        searchIndex.add(section.getKey(), comment);
+      }
+      broadcaster.publish(section.getKey(), section.getValue());
+    }
+  }
+
+  private static List<String> sectionKinds(final String keyword) {
+    List<String> kinds = new ArrayList<>();
+    for (int id = 1; id <= Constants.IMG_COUNT; ++id) {
+      kinds.add(keyword + id);
+    }
+
+    return kinds;
+  }
+
+  private static boolean isValidId(final String id) {
+    int idx;
+    try {
+      idx = Integer.parseInt(id);
+    } catch (NumberFormatException e) {
+      return false;
+    }
+
+    return idx > 0 && idx <= Constants.IMG_COUNT;
   }
 }
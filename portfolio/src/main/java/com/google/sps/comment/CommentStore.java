@@ -0,0 +1,77 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** 
+ * Where the comments of the sections are kept. Sections are named by their kind, e.g.
+ * "Comment3", and their comments are only ever added, never changed or deleted.
+ * {@link CommentStorage} validates the sections and caches the pages on top of it.
+ */
+public interface CommentStore extends AutoCloseable {
+  /** 
+   * Stores new comments, by section kind, in as few writes as the store allows.
+   */
+  void putAll(Map<String, List<Comment>> comments);
+
+  /** 
+   * Returns at most pageSize comments of a section, the newest first, starting at the given
+   * cursor, and only those posted after {@code since}, in epoch milliseconds, unless it is null.
+   *
+   * @param cursor a cursor from a previous page of the same section, or null for the first page.
+   * @throws IllegalArgumentException if the cursor is malformed.
+   */
+  CommentPage query(String kind, int pageSize, String cursor, Long since);
+
+  /** 
+   * Returns the first page of every given section, by kind. Stores able to run the queries
+   * concurrently override this.
+   */
+  default Map<String, CommentPage> queryAll(final Collection<String> kinds, final int pageSize) {
+    Map<String, CommentPage> pages = new LinkedHashMap<>();
+    for (String kind : kinds) {
+      pages.put(kind, query(kind, pageSize, null, null));
+    }
+
+    return pages;
+  }
+
+  /** 
+   * Returns the up-to-date number of comments of a section.
+   */
+  long count(String kind);
+
+  /** 
+   * Returns when the newest comment of a section was posted, in epoch milliseconds, as up to
+   * date as {@link #count}, or null if the store can't tell. Stores whose queries may lag
+   * behind their counts override this, so that a page missing the newest comment is told
+   * apart from a complete one.
+   */
+  default Long newest(final String kind) {
+    return null;
+  }
+
+  /** 
+   * Returns the number of comments of every given section, by kind, possibly a little stale.
+   */
+  Map<String, Long> counts(Collection<String> kinds);
+
+  @Override
+  void close();
+}
@@ -0,0 +1,173 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.QueryResultList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** 
+ * Keeps every section as a Datastore kind, with one entity per comment, named by the id of
+ * the comment so that writing it again is harmless, and counts the comments with sharded
+ * {@link CommentCounters}. Cursors are Datastore's web-safe ones.
+ */
+public class DatastoreCommentStore implements CommentStore {
+  private static final Logger logger = Logger.getLogger(DatastoreCommentStore.class.getName());
+
+  private final DatastoreService storage;
+  private final AsyncDatastoreService asyncStorage;
+  private final CommentCounters counters;
+
+  public DatastoreCommentStore(final DatastoreService storage,
+                               final AsyncDatastoreService asyncStorage,
+                               final CommentCounters counters) {
+    this.storage = storage;
+    this.asyncStorage = asyncStorage;
+    this.counters = counters;
+  }
+
+  @Override
+  public void putAll(final Map<String, List<Comment>> comments) {
+    List<Entity> entities = new ArrayList<>();
+    for (Map.Entry<String, List<Comment>> section : comments.entrySet()) {
+      for (Comment comment : section.getValue()) {
+        // Keyed by the comment's id, so a retried put overwrites what an earlier one stored.
+        Entity entity = comment.getId() == null ? new Entity(section.getKey()) :
+                                                  new Entity(section.getKey(), comment.getId());
+        entity.setProperty("username", comment.getUsername());
+        entity.setProperty(CommentStorage.CREATED_AT, comment.getCreatedAt());
+        entity.setProperty("body", comment.getBody());
+        entities.add(entity);
+      }
+    }
+
+    storage.put(entities);
+
+    // Counted only once stored, so a section's count never runs ahead of its comments. The
+    // comments are stored whatever happens next, so a failed count must not fail the write.
+    for (Map.Entry<String, List<Comment>> section : comments.entrySet()) {
+      try {
+        long newest = Long.MIN_VALUE;
+        for (Comment comment : section.getValue()) {
+          newest = Math.max(newest, comment.getCreatedAt());
+        }
+        counters.increment(section.getKey(), section.getValue().size(), newest);
+      } catch (RuntimeException e) {
+        logger.log(Level.SEVERE, "Could not count " + section.getValue().size() +
+                   " comments of " + section.getKey() + ", POST to /admin/recount", e);
+      }
+    }
+  }
+
+  @Override
+  public CommentPage query(final String kind, final int pageSize, final String cursor,
+                           final Long since) {
+    return toPage(runQuery(storage.prepare(sortedQuery(kind, since)), pageSize, cursor),
+                  pageSize);
+  }
+
+  /** 
+   * Starts all the queries on the async Datastore service before the results of the first one
+   * are waited on.
+   */
+  @Override
+  public Map<String, CommentPage> queryAll(final Collection<String> kinds, final int pageSize) {
+    Map<String, QueryResultList<Entity>> pending = new LinkedHashMap<>();
+    for (String kind : kinds) {
+      pending.put(kind, runQuery(asyncStorage.prepare(sortedQuery(kind, null)), pageSize, null));
+    }
+
+    Map<String, CommentPage> pages = new LinkedHashMap<>();
+    for (Map.Entry<String, QueryResultList<Entity>> query : pending.entrySet()) {
+      pages.put(query.getKey(), toPage(query.getValue(), pageSize));
+    }
+
+    return pages;
+  }
+
+  @Override
+  public long count(final String kind) {
+    return counters.getExactCount(kind);
+  }
+
+  @Override
+  public Long newest(final String kind) {
+    return counters.getNewest(kind);
+  }
+
+  @Override
+  public Map<String, Long> counts(final Collection<String> kinds) {
+    Map<String, Long> all = counters.getCounts();
+
+    Map<String, Long> counts = new LinkedHashMap<>();
+    for (String kind : kinds) {
+      counts.put(kind, all.getOrDefault(kind, 0L));
+    }
+
+    return counts;
+  }
+
+  @Override
+  public void close() {
+    // Datastore connections are managed by App Engine.
+  }
+
+  private static Query sortedQuery(final String kind, final Long since) {
+    Query query = new Query(kind).addSort(CommentStorage.CREATED_AT, SortDirection.DESCENDING);
+
+    if (since != null) {
+      query.setFilter(new FilterPredicate(CommentStorage.CREATED_AT, FilterOperator.GREATER_THAN,
+                                          since));
+    }
+
+    return query;
+  }
+
+  private static QueryResultList<Entity> runQuery(final PreparedQuery query, final int pageSize,
+                                                  final String cursor) {
+    FetchOptions options = FetchOptions.Builder.withLimit(pageSize);
+    if (cursor != null) {
+      options.startCursor(Cursor.fromWebSafeString(cursor));
+    }
+
+    return query.asQueryResultList(options);
+  }
+
+  private static CommentPage toPage(final QueryResultList<Entity> entities, final int pageSize) {
+    List<Comment> comments = new ArrayList<>();
+    for (Entity result : entities) {
+      comments.add(Comment.fromEntity(result));
+    }
+
+    // A short page is the last one, so there is nothing left to point at.
+    return new CommentPage(comments, entities.size() < pageSize ? null :
+                                     entities.getCursor().toWebSafeString());
+  }
+}
@@ -0,0 +1,648 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/** 
+ * Embedded store keeping every section in its own append-only log, split in segment files
+ * named "<kind>.<first>-<last>.log", so the app runs on a plain JVM without Datastore.
+ *
+ * Every record is [payload length][CRC32 of the payload][createdAt][username][body][id],
+ * where the id is missing from records of comments posted before they had one. Only the
+ * location and time of the records are kept in memory, in an offset index rebuilt by
+ * scanning the segments on open, where a torn record at the end of a segment is cut off.
+ * Pages are read newest first straight from the index, and their cursor is the position in
+ * the log the next page starts below, which appends never move.
+ *
+ * The ids of the last records of every section are kept as well, and a comment whose id is
+ * among them is not appended again. A write retried after it failed part way, e.g. on its
+ * second section, thus only appends what is missing, as its records are the last ones.
+ *
+ * Comments are never deleted, so compaction has nothing to drop, and only merges segments,
+ * by tiers: once enough full segments of the same span pile up, they are merged into one
+ * spanning all of them, which may in turn complete a group of the next tier. With groups of
+ * n, a section of s segments thus keeps fewer than n files per power of n in s, and every
+ * record is copied once per tier. The merged file is renamed into place before the old ones
+ * are deleted, and on open a segment whose numbers are covered by a merged one is a leftover
+ * of an interrupted compaction, and is deleted.
+ *
+ * Full segments are never written again, so they are copied without holding the section's
+ * lock, which is only taken to swap the merged segment into the index. Writes thus only ever
+ * wait for the swap. Compaction runs periodically on a background thread once started, and
+ * otherwise right after the write that filled a segment, once that write has released the
+ * lock.
+ */
+public class LogCommentStore implements CommentStore {
+  private static final Logger logger = Logger.getLogger(LogCommentStore.class.getName());
+
+  private static final Pattern SEGMENT_NAME = Pattern.compile("(\\w+)\\.(\\d+)-(\\d+)\\.log");
+  private static final Pattern KIND = Pattern.compile("\\w+");
+  // The payload length and its CRC32, both ints.
+  private static final int HEADER_BYTES = 8;
+  // How many ids of the last records of a section are remembered, more than a write-behind
+  // batch or queue ever holds.
+  private static final int RECENT_IDS = 2048;
+  // How long closing waits for a running compaction to finish.
+  private static final long CLOSE_TIMEOUT_SECONDS = 60;
+
+  private final Path directory;
+  private final long segmentBytes;
+  private final int compactionThreshold;
+  private final ConcurrentMap<String, Section> sections = new ConcurrentHashMap<>();
+  private volatile ScheduledExecutorService compactor;
+
+  private LogCommentStore(final Path directory, final long segmentBytes,
+                          final int compactionThreshold) {
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+    this.compactionThreshold = compactionThreshold;
+  }
+
+  /** 
+   * Opens the store kept in a directory, creating it if needed, and indexes its segments.
+   *
+   * @param segmentBytes the size past which a section starts a new segment.
+   * @param compactionThreshold how many full segments of the same span are merged at once.
+   * @throws IllegalArgumentException if segmentBytes is not positive or the threshold is
+   *    less than 2.
+   */
+  public static LogCommentStore open(final Path directory, final long segmentBytes,
+                                     final int compactionThreshold) throws IOException {
+    if (segmentBytes <= 0 || compactionThreshold < 2) {
+      throw new IllegalArgumentException("Segments must have a size and be merged in groups");
+    }
+
+    Files.createDirectories(directory);
+    LogCommentStore store = new LogCommentStore(directory, segmentBytes, compactionThreshold);
+
+    Map<String, List<Segment>> found = new HashMap<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        Matcher matcher = SEGMENT_NAME.matcher(name);
+
+        if (name.endsWith(".tmp")) {
+          // An interrupted compaction, whose segments are all still there.
+          Files.delete(file);
+        } else if (matcher.matches()) {
+          found.computeIfAbsent(matcher.group(1), kind -> new ArrayList<>())
+               .add(new Segment(file, Integer.parseInt(matcher.group(2)),
+                                Integer.parseInt(matcher.group(3))));
+        }
+      }
+    }
+
+    try {
+      for (Map.Entry<String, List<Segment>> section : found.entrySet()) {
+        Section recovered = store.new Section(section.getKey());
+        recovered.recover(section.getValue());
+        store.sections.put(section.getKey(), recovered);
+      }
+    } catch (IOException e) {
+      store.close();
+      throw e;
+    }
+
+    return store;
+  }
+
+  /** 
+   * Starts compacting all sections every {@code intervalMillis} on a background thread,
+   * instead of after the writes that fill a segment.
+   */
+  public synchronized void start(final long intervalMillis) {
+    if (intervalMillis <= 0) {
+      throw new IllegalArgumentException("The compaction interval must be positive");
+    }
+    if (compactor != null) {
+      return;
+    }
+
+    ScheduledExecutorService started = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "LogCommentStore compaction");
+      thread.setDaemon(true);
+      return thread;
+    });
+    started.scheduleWithFixedDelay(this::compact, intervalMillis, intervalMillis,
+                                   TimeUnit.MILLISECONDS);
+    compactor = started;
+  }
+
+  @Override
+  public void putAll(final Map<String, List<Comment>> comments) {
+    for (Map.Entry<String, List<Comment>> section : comments.entrySet()) {
+      try {
+        Section appended = section(section.getKey());
+        if (appended.append(section.getValue()) && compactor == null) {
+          appended.compact();
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not store the comments of " + section.getKey(), e);
+      }
+    }
+  }
+
+  @Override
+  public CommentPage query(final String kind, final int pageSize, final String cursor,
+                           final Long since) {
+    try {
+      return section(kind).read(pageSize, cursor, since);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read the comments of " + kind, e);
+    }
+  }
+
+  @Override
+  public long count(final String kind) {
+    return section(kind).size();
+  }
+
+  @Override
+  public Map<String, Long> counts(final Collection<String> kinds) {
+    Map<String, Long> counts = new LinkedHashMap<>();
+    for (String kind : kinds) {
+      counts.put(kind, count(kind));
+    }
+
+    return counts;
+  }
+
+  @Override
+  public void close() {
+    ScheduledExecutorService running;
+    synchronized (this) {
+      running = compactor;
+      compactor = null;
+    }
+
+    if (running != null) {
+      // Not interrupted, as that would close the channels a merge is reading.
+      running.shutdown();
+      try {
+        if (!running.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+          logger.warning("Closing the comment log while a compaction is still running");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    for (Section section : sections.values()) {
+      section.close();
+    }
+  }
+
+  private Section section(final String kind) {
+    if (!KIND.matcher(kind).matches()) {
+      throw new IllegalArgumentException("Not a valid section kind: " + kind);
+    }
+
+    return sections.computeIfAbsent(kind, Section::new);
+  }
+
+  private void compact() {
+    for (Section section : sections.values()) {
+      try {
+        section.compact();
+      } catch (IOException | RuntimeException e) {
+        logger.log(Level.WARNING, "Could not compact the comment log of " + section.kind, e);
+      }
+    }
+  }
+
+  /** 
+   * One segment file, only appended to while it is the last one of its section.
+   */
+  private static final class Segment {
+    private final Path path;
+    private final int first;
+    private final int last;
+    private FileChannel channel;
+    private long size;
+    // Where the records of the segment are in the index of its section.
+    private int firstRecord;
+    private int records;
+
+    Segment(final Path path, final int first, final int last) {
+      this.path = path;
+      this.first = first;
+      this.last = last;
+    }
+
+    /** 
+     * Returns how many segments, as first written, this one holds.
+     */
+    int span() {
+      return last - first + 1;
+    }
+
+    void open(final StandardOpenOption... options) throws IOException {
+      channel = FileChannel.open(path, options);
+    }
+
+    void close() {
+      try {
+        if (channel != null) {
+          channel.close();
+        }
+      } catch (IOException e) {
+        logger.warning("Could not close " + path + ": " + e);
+      }
+    }
+  }
+
+  /** 
+   * The segments of one section, along with the offset index of its records, in the order
+   * they were appended. All accesses hold the section's lock, except for copying full
+   * segments, which only holds the compaction lock.
+   */
+  private final class Section {
+    private final String kind;
+    private final Object compactionLock = new Object();
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment[] recordSegments = new Segment[16];
+    private long[] recordOffsets = new long[16];
+    private long[] recordTimes = new long[16];
+    private int size;
+    // The ids of the last RECENT_IDS records, the oldest first.
+    private final Set<String> recentIds = new LinkedHashSet<>();
+
+    Section(final String kind) {
+      this.kind = kind;
+    }
+
+    synchronized int size() {
+      return size;
+    }
+
+    synchronized void recover(final List<Segment> found) throws IOException {
+      // Merged segments sort before the ones they cover, which are then left over.
+      found.sort(Comparator.comparingInt((Segment segment) -> segment.first)
+                           .thenComparingInt(segment -> -segment.last));
+
+      int covered = 0;
+      for (Segment segment : found) {
+        if (segment.last <= covered) {
+          Files.delete(segment.path);
+          continue;
+        }
+
+        covered = segment.last;
+        segment.open(StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments.add(segment);
+        scan(segment);
+      }
+    }
+
+    /** 
+     * Appends comments to the log, and returns whether that started a new segment, in which
+     * case the section may have segments to merge.
+     */
+    synchronized boolean append(final List<Comment> comments) throws IOException {
+      int segmentCount = segments.size();
+      Segment active = null;
+
+      for (Comment comment : comments) {
+        if (comment.getId() != null && recentIds.contains(comment.getId())) {
+          // Already appended by an earlier attempt of the same write.
+          continue;
+        }
+
+        ByteBuffer record = encode(comment);
+        active = activeSegment(record.remaining());
+
+        long offset = active.size;
+        writeFully(active.channel, record, offset);
+        active.size += record.capacity();
+        index(active, offset, comment.getCreatedAt(), comment.getId());
+      }
+
+      if (active != null) {
+        active.channel.force(false);
+      }
+
+      return segments.size() > segmentCount;
+    }
+
+    synchronized CommentPage read(final int pageSize, final String cursor, final Long since)
+        throws IOException {
+      int end = size;
+      if (cursor != null) {
+        end = Integer.parseInt(cursor);
+        if (end < 0 || end > size) {
+          throw new IllegalArgumentException("Unknown cursor: " + cursor);
+        }
+      }
+
+      List<Comment> comments = new ArrayList<>();
+      int last = end;
+      for (int record = end - 1; record >= 0 && comments.size() < pageSize; --record) {
+        if (since == null || recordTimes[record] > since) {
+          comments.add(decode(recordSegments[record], recordOffsets[record]));
+          last = record;
+        }
+      }
+
+      // As with Datastore, a short page is the last one.
+      return new CommentPage(comments, comments.size() < pageSize || last == 0 ? null :
+                                       Integer.toString(last));
+    }
+
+    synchronized void close() {
+      for (Segment segment : segments) {
+        segment.close();
+      }
+    }
+
+    /** 
+     * Merges full segments, as long as enough of them share the same span, one compaction
+     * of the section at a time.
+     */
+    void compact() throws IOException {
+      synchronized (compactionLock) {
+        for (List<Segment> merging = mergeable(); merging != null; merging = mergeable()) {
+          merge(merging);
+        }
+      }
+    }
+
+    /** 
+     * Indexes the valid records of a segment, and cuts off whatever follows them.
+     */
+    private void scan(final Segment segment) throws IOException {
+      long fileSize = segment.channel.size();
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      long offset = 0;
+
+      while (offset + HEADER_BYTES <= fileSize) {
+        header.clear();
+        readFully(segment.channel, header, offset);
+        int length = header.getInt(0);
+        if (length < Long.BYTES || offset + HEADER_BYTES + length > fileSize) {
+          break;
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(segment.channel, payload, offset + HEADER_BYTES);
+        if (checksum(payload) != header.getInt(Integer.BYTES)) {
+          break;
+        }
+
+        Comment comment = decode(payload);
+        index(segment, offset, comment.getCreatedAt(), comment.getId());
+        offset += HEADER_BYTES + length;
+      }
+
+      if (offset < fileSize) {
+        logger.warning("Cutting off " + (fileSize - offset) + " bytes of torn records from " +
+                       segment.path);
+        segment.channel.truncate(offset);
+      }
+      segment.size = offset;
+    }
+
+    /** 
+     * Returns the segment a record of the given length goes to, starting a new one when the
+     * last one is full.
+     */
+    private Segment activeSegment(final int recordBytes) throws IOException {
+      Segment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+
+      if (active == null || (active.size > 0 && active.size + recordBytes > segmentBytes)) {
+        int number = active == null ? 1 : active.last + 1;
+        if (active != null) {
+          active.channel.force(false);
+        }
+
+        active = new Segment(directory.resolve(kind + "." + number + "-" + number + ".log"),
+                             number, number);
+        active.open(StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        segments.add(active);
+      }
+
+      return active;
+    }
+
+    /** 
+     * Returns the first run of full segments of the same span long enough to be merged, or
+     * null. Spans only ever grow by a factor of the threshold, and merging the first run keeps
+     * them decreasing along the section, even with segments started during a merge.
+     */
+    private synchronized List<Segment> mergeable() {
+      // The last segment is the active one, never merged.
+      for (int from = 0, to = 1; to < segments.size(); ++to) {
+        if (segments.get(to - 1).span() != segments.get(from).span()) {
+          from = to - 1;
+        } else if (to - from == compactionThreshold) {
+          return new ArrayList<>(segments.subList(from, to));
+        }
+      }
+
+      return null;
+    }
+
+    /** 
+     * Replaces full segments by a single one holding all their records, copied without the
+     * section's lock.
+     */
+    private void merge(final List<Segment> merging) throws IOException {
+      Segment first = merging.get(0);
+      Segment last = merging.get(merging.size() - 1);
+      Segment merged = new Segment(directory.resolve(
+          kind + "." + first.first + "-" + last.last + ".log"), first.first, last.last);
+      Path temporary = merged.path.resolveSibling(merged.path.getFileName() + ".tmp");
+
+      Map<Segment, Long> bases = new HashMap<>();
+      try (FileChannel target = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW,
+                                                 StandardOpenOption.WRITE)) {
+        for (Segment segment : merging) {
+          bases.put(segment, merged.size);
+          for (long copied = 0; copied < segment.size; ) {
+            copied += segment.channel.transferTo(copied, segment.size - copied, target);
+          }
+          merged.size += segment.size;
+
+          if (merged.records == 0) {
+            merged.firstRecord = segment.firstRecord;
+          }
+          merged.records += segment.records;
+        }
+        target.force(false);
+      } catch (IOException | RuntimeException e) {
+        Files.deleteIfExists(temporary);
+        throw e;
+      }
+
+      Files.move(temporary, merged.path, StandardCopyOption.ATOMIC_MOVE);
+      merged.open(StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+      synchronized (this) {
+        // Records are only ever appended, so the merged ones are still where they were.
+        for (int record = merged.firstRecord; record < merged.firstRecord + merged.records;
+             ++record) {
+          recordOffsets[record] += bases.get(recordSegments[record]);
+          recordSegments[record] = merged;
+        }
+
+        int from = segments.indexOf(first);
+        segments.subList(from, from + merging.size()).clear();
+        segments.add(from, merged);
+      }
+
+      // Reads hold the lock, so none of them is left on the old segments.
+      for (Segment segment : merging) {
+        segment.close();
+        Files.delete(segment.path);
+      }
+    }
+
+    private void index(final Segment segment, final long offset, final long createdAt,
+                       final String id) {
+      if (size == recordOffsets.length) {
+        recordSegments = Arrays.copyOf(recordSegments, size * 2);
+        recordOffsets = Arrays.copyOf(recordOffsets, size * 2);
+        recordTimes = Arrays.copyOf(recordTimes, size * 2);
+      }
+
+      recordSegments[size] = segment;
+      recordOffsets[size] = offset;
+      recordTimes[size] = createdAt;
+      if (segment.records == 0) {
+        segment.firstRecord = size;
+      }
+      ++segment.records;
+      ++size;
+
+      if (id != null) {
+        recentIds.add(id);
+        if (recentIds.size() > RECENT_IDS) {
+          Iterator<String> oldest = recentIds.iterator();
+          oldest.next();
+          oldest.remove();
+        }
+      }
+    }
+  }
+
+  private static ByteBuffer encode(final Comment comment) {
+    byte[] username = comment.getUsername().getBytes(StandardCharsets.UTF_8);
+    byte[] body = comment.getBody().getBytes(StandardCharsets.UTF_8);
+    byte[] id = comment.getId() == null ? null : comment.getId().getBytes(StandardCharsets.UTF_8);
+    int length = Long.BYTES + Integer.BYTES + username.length + Integer.BYTES + body.length +
+                 (id == null ? 0 : Integer.BYTES + id.length);
+
+    ByteBuffer payload = ByteBuffer.allocate(length);
+    payload.putLong(comment.getCreatedAt());
+    payload.putInt(username.length).put(username);
+    payload.putInt(body.length).put(body);
+    if (id != null) {
+      payload.putInt(id.length).put(id);
+    }
+    payload.flip();
+
+    ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + length);
+    record.putInt(length).putInt(checksum(payload)).put(payload);
+    record.flip();
+
+    return record;
+  }
+
+  private static Comment decode(final Segment segment, final long offset) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    readFully(segment.channel, header, offset);
+
+    ByteBuffer payload = ByteBuffer.allocate(header.getInt(0));
+    readFully(segment.channel, payload, offset + HEADER_BYTES);
+
+    return decode(payload);
+  }
+
+  private static Comment decode(final ByteBuffer payload) {
+    ByteBuffer fields = payload.duplicate();
+    long createdAt = fields.getLong();
+    byte[] username = new byte[fields.getInt()];
+    fields.get(username);
+    byte[] body = new byte[fields.getInt()];
+    fields.get(body);
+
+    byte[] id = null;
+    if (fields.hasRemaining()) {
+      id = new byte[fields.getInt()];
+      fields.get(id);
+    }
+
+    return new Comment(id == null ? null : new String(id, StandardCharsets.UTF_8),
+                       new String(username, StandardCharsets.UTF_8), createdAt,
+                       new String(body, StandardCharsets.UTF_8));
+  }
+
+  private static int checksum(final ByteBuffer payload) {
+    CRC32 crc = new CRC32();
+    crc.update(payload.duplicate());
+    return (int) crc.getValue();
+  }
+
+  /** 
+   * Fills the buffer from the given position, and flips it for reading.
+   */
+  private static void readFully(final FileChannel channel, final ByteBuffer buffer,
+                                final long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of segment");
+      }
+    }
+    buffer.flip();
+  }
+
+  private static void writeFully(final FileChannel channel, final ByteBuffer buffer,
+                                 final long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, position + buffer.position());
+    }
+  }
+}
@@ -0,0 +1,74 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** 
+ * One page of search results, the best match first, along with the cursor the next page
+ * starts at.
+ */
+public final class SearchPage {
+  private final List<Hit> hits;
+  private final String cursor;
+
+  public SearchPage(final List<Hit> hits, final String cursor) {
+    this.hits = Collections.unmodifiableList(new ArrayList<>(hits));
+    this.cursor = cursor;
+  }
+
+  /** 
+   * Returns the read-only hits of the page, by decreasing score.
+   */
+  public List<Hit> getHits() {
+    return hits;
+  }
+
+  /** 
+   * Returns the cursor of the next page, or null if this is the last page.
+   */
+  public String getCursor() {
+    return cursor;
+  }
+
+  /** 
+   * A matching comment, along with the kind of its section and its BM25 score.
+   */
+  public static final class Hit {
+    private final String kind;
+    private final Comment comment;
+    private final double score;
+
+    public Hit(final String kind, final Comment comment, final double score) {
+      this.kind = kind;
+      this.comment = comment;
+      this.score = score;
+    }
+
+    public String getKind() {
+      return kind;
+    }
+
+    public Comment getComment() {
+      return comment;
+    }
+
+    public double getScore() {
+      return score;
+    }
+  }
+}
@@ -0,0 +1,231 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 
+ * Second-level cache of the first comment page of the sections, kept in memcache so that all
+ * instances share it, instead of each one warming its own {@link CommentCache}.
+ *
+ * Pages are stored under versioned keys, "<section>@<version>". Invalidating a section only
+ * increments its version, so readers stop looking at the old page, which memcache evicts or
+ * lets expire. A version evicted by memcache starts again from the current time, rather than
+ * from 0, so it can't land on a version whose page is still cached. Memcache failures are
+ * logged by the service and read as misses.
+ *
+ * Versions can be remembered for a short while, so that serving a page from the cache of the
+ * instance doesn't cost a memcache call every time. Writes from other instances are then seen
+ * up to that long after they happened, while writes invalidated through this cache are seen
+ * right away.
+ */
+public class SharedCommentCache {
+  private static final String VERSION_SUFFIX = "#version";
+
+  private final MemcacheService memcache;
+  private final Expiration expiration;
+  private final long versionTtlMillis;
+  private final ConcurrentMap<String, CheckedVersion> checkedVersions =
+      new ConcurrentHashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /** 
+   * Reads the versions from memcache every time they are asked for.
+   */
+  public SharedCommentCache(final MemcacheService memcache, final int expirationSeconds) {
+    this(memcache, expirationSeconds, 0);
+  }
+
+  /** 
+   * @param versionTtlMillis how long a version read from memcache is handed out again
+   *    without reading it, 0 to always read it.
+   */
+  public SharedCommentCache(final MemcacheService memcache, final int expirationSeconds,
+                            final long versionTtlMillis) {
+    if (expirationSeconds <= 0 || versionTtlMillis < 0) {
+      throw new IllegalArgumentException("The expiration must be positive, the TTL not negative");
+    }
+
+    this.memcache = memcache;
+    this.expiration = Expiration.byDeltaSeconds(expirationSeconds);
+    this.versionTtlMillis = versionTtlMillis;
+  }
+
+  /** 
+   * Returns the current version of a section, to be handed back to {@code get} and {@code put},
+   * or 0 if memcache could not be reached. Versions start from the current time, so they are
+   * never 0 otherwise.
+   */
+  public long version(final String section) {
+    Long version = checked(section);
+    if (version == null) {
+      version = remember(section, memcache.increment(section + VERSION_SUFFIX, 0,
+                                                     System.currentTimeMillis()));
+    }
+
+    return version == null ? 0 : version;
+  }
+
+  /** 
+   * Returns the versions of several sections with a single memcache call.
+   */
+  public Map<String, Long> versions(final Collection<String> sections) {
+    Map<String, Long> versions = new HashMap<>();
+    Map<String, Long> offsets = new HashMap<>();
+    for (String section : sections) {
+      Long version = checked(section);
+      if (version == null) {
+        offsets.put(section + VERSION_SUFFIX, 0L);
+      } else {
+        versions.put(section, version);
+      }
+    }
+
+    if (!offsets.isEmpty()) {
+      Map<String, Long> found = memcache.incrementAll(offsets, System.currentTimeMillis());
+      for (String section : sections) {
+        if (!versions.containsKey(section)) {
+          Long version = remember(section,
+                                  found == null ? null : found.get(section + VERSION_SUFFIX));
+          versions.put(section, version == null ? 0 : version);
+        }
+      }
+    }
+
+    return versions;
+  }
+
+  /** 
+   * Returns the cached first page of a section at the given version, or null.
+   */
+  public CommentPage get(final String section, final long version) {
+    return count((CommentPage) memcache.get(pageKey(section, version)));
+  }
+
+  /** 
+   * Returns the cached first pages of several sections, by section, with a single memcache
+   * call. Sections whose page is not cached are left out.
+   */
+  public Map<String, CommentPage> getAll(final Map<String, Long> versions) {
+    List<String> keys = new ArrayList<>();
+    for (Map.Entry<String, Long> section : versions.entrySet()) {
+      keys.add(pageKey(section.getKey(), section.getValue()));
+    }
+
+    Map<String, Object> found = memcache.getAll(keys);
+    Map<String, CommentPage> pages = new HashMap<>();
+    for (Map.Entry<String, Long> section : versions.entrySet()) {
+      CommentPage page = count((CommentPage) found.get(pageKey(section.getKey(),
+                                                               section.getValue())));
+      if (page != null) {
+        pages.put(section.getKey(), page);
+      }
+    }
+
+    return pages;
+  }
+
+  /** 
+   * Caches the first page of a section, read when the section was at {@code version}. A page
+   * read by a reader racing a writer ends up under the old version, which nobody reads anymore.
+   */
+  public void put(final String section, final long version, final CommentPage page) {
+    memcache.put(pageKey(section, version), page, expiration);
+  }
+
+  /** 
+   * Moves a section to a new version, after a write to it.
+   */
+  public void invalidate(final String section) {
+    Long version = memcache.increment(section + VERSION_SUFFIX, 1, System.currentTimeMillis());
+    if (version == null) {
+      checkedVersions.remove(section);
+    } else {
+      remember(section, version);
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  private CommentPage count(final CommentPage page) {
+    if (page == null) {
+      misses.incrementAndGet();
+    } else {
+      hits.incrementAndGet();
+    }
+
+    return page;
+  }
+
+  /** 
+   * Returns the version of a section read less than the TTL ago, or null.
+   */
+  private Long checked(final String section) {
+    CheckedVersion checked = checkedVersions.get(section);
+    if (checked == null || System.currentTimeMillis() - checked.checkedAtMillis >=
+                           versionTtlMillis) {
+      return null;
+    }
+
+    return checked.version;
+  }
+
+  /** 
+   * Remembers a version just read from memcache, unless it is missing or a newer one is
+   * already known, e.g. from an invalidation racing the read. Returns the version.
+   */
+  private Long remember(final String section, final Long version) {
+    if (version != null && versionTtlMillis > 0) {
+      CheckedVersion read = new CheckedVersion(version, System.currentTimeMillis());
+      checkedVersions.merge(section, read,
+                            (known, latest) -> known.version > latest.version ? known : latest);
+    }
+
+    return version;
+  }
+
+  private static String pageKey(final String section, final long version) {
+    return section + "@" + version;
+  }
+
+  /** 
+   * A version of a section, along with when it was read from memcache.
+   */
+  private static final class CheckedVersion {
+    private final long version;
+    private final long checkedAtMillis;
+
+    CheckedVersion(final long version, final long checkedAtMillis) {
+      this.version = version;
+      this.checkedAtMillis = checkedAtMillis;
+    }
+  }
+}
@@ -0,0 +1,160 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import com.google.sps.config.Constants;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/** 
+ * Backfills the indexed CREATED_AT property of the comments stored before it existed, from
+ * their "dd/MM/yyyy hh:mm" timestamp string. Comments without it don't show up in the sorted
+ * queries, so this has to run once after deploying.
+ *
+ * The sections are walked one batch at a time, with a Datastore cursor. The position is saved
+ * after every batch, so a run cut short, e.g. by a request deadline, resumes where it stopped.
+ * Comments that already have the property are skipped, so replaying a batch is harmless.
+ */
+public class TimestampMigration {
+  private static final Logger logger = Logger.getLogger(TimestampMigration.class.getName());
+
+  private static final String PROGRESS_KIND = "Migration";
+  private static final String PROGRESS_NAME = "comment-created-at";
+  private static final String LEGACY_FORMAT = "dd/MM/yyyy hh:mm";
+
+  private final DatastoreService storage;
+  private final String keyword;
+  private final int batchSize;
+  private final Consumer<String> onMigrated;
+
+  /** 
+   * @param onMigrated is told every kind a batch was written to, e.g. to invalidate caches.
+   */
+  public TimestampMigration(final DatastoreService storage, final String keyword,
+                            final int batchSize, final Consumer<String> onMigrated) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("The batch size must be positive");
+    }
+
+    this.storage = storage;
+    this.keyword = keyword;
+    this.batchSize = batchSize;
+    this.onMigrated = onMigrated;
+  }
+
+  /** 
+   * Migrates batches until everything is migrated or the deadline, in epoch milliseconds,
+   * is reached.
+   *
+   * @return the saved progress entity: the "section" and "cursor" the next run starts at, the
+   *    number of comments "migrated" so far, and whether the migration is "done".
+   */
+  public Entity run(final long deadlineMillis) {
+    Entity progress = loadProgress();
+
+    while (!(Boolean) progress.getProperty("done") &&
+           System.currentTimeMillis() < deadlineMillis) {
+      long section = (Long) progress.getProperty("section");
+      String cursor = (String) progress.getProperty("cursor");
+
+      FetchOptions options = FetchOptions.Builder.withLimit(batchSize);
+      if (cursor != null) {
+        options.startCursor(Cursor.fromWebSafeString(cursor));
+      }
+
+      // Walks the kind in key order, which needs no extra index.
+      QueryResultList<Entity> comments =
+          storage.prepare(new Query(keyword + section)).asQueryResultList(options);
+
+      List<Entity> migrated = new ArrayList<>();
+      for (Entity comment : comments) {
+        if (comment.getProperty(CommentStorage.CREATED_AT) == null) {
+          comment.setProperty(CommentStorage.CREATED_AT, parseLegacy(comment));
+          migrated.add(comment);
+        }
+      }
+
+      if (!migrated.isEmpty()) {
+        storage.put(migrated);
+        onMigrated.accept(keyword + section);
+      }
+
+      progress.setProperty("migrated", (Long) progress.getProperty("migrated") + migrated.size());
+      if (comments.size() < batchSize) {
+        progress.setProperty("section", section + 1);
+        progress.setProperty("cursor", null);
+        progress.setProperty("done", section + 1 > Constants.IMG_COUNT);
+      } else {
+        progress.setProperty("cursor", comments.getCursor().toWebSafeString());
+      }
+
+      storage.put(progress);
+    }
+
+    return progress;
+  }
+
+  private Entity loadProgress() {
+    Key key = KeyFactory.createKey(PROGRESS_KIND, PROGRESS_NAME);
+
+    try {
+      return storage.get(key);
+    } catch (EntityNotFoundException e) {
+      Entity progress = new Entity(key);
+      progress.setProperty("section", 1L);
+      progress.setProperty("cursor", null);
+      progress.setProperty("migrated", 0L);
+      progress.setProperty("done", false);
+      return progress;
+    }
+  }
+
+  /** 
+   * Parses the legacy timestamp as UTC, the zone App Engine formatted it in. The string has no
+   * AM/PM marker, so afternoon times can't be told apart and are read as morning ones. Missing
+   * or malformed timestamps become 0, which sorts the comment last.
+   */
+  private long parseLegacy(final Entity comment) {
+    Object timestamp = comment.getProperty(CommentStorage.LEGACY_TIMESTAMP);
+    if (timestamp == null) {
+      return 0;
+    }
+
+    SimpleDateFormat format = new SimpleDateFormat(LEGACY_FORMAT);
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    format.setLenient(false);
+
+    try {
+      return format.parse(timestamp.toString()).getTime();
+    } catch (ParseException e) {
+      logger.warning("Malformed timestamp on " + comment.getKey() + ": " + timestamp);
+      return 0;
+    }
+  }
+}
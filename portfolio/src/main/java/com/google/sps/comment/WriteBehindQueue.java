@@ -0,0 +1,257 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import com.google.appengine.api.ThreadManager;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** 
+ * Buffers new comments in a bounded queue and writes them to the store in batches, with one
+ * {@code putAll} per batch, e.g. one Datastore round trip, instead of one per comment.
+ *
+ * A batch is written as soon as it is full, by the request that filled it, or once the oldest
+ * queued comment is older than the maximum delay. The delay is enforced by a background
+ * thread when the instance's scaling allows one, and by the next enqueue otherwise. When the
+ * queue is full, the request flushes it before enqueuing, so a burst slows writers down to
+ * the store's pace instead of dropping comments.
+ *
+ * A batch stays at the head of the queue until it is written. Failed writes are retried a few
+ * times with a growing delay, and a batch still failing is left in place, to be retried by
+ * the next flush, so a store outage delays comments rather than losing them. The stores key
+ * comments by their ids, so retrying a write that failed after storing some of the batch, or
+ * all of it, doesn't store anything twice.
+ *
+ * Comments are not visible to readers until their batch is written.
+ */
+public class WriteBehindQueue implements AutoCloseable {
+  private static final Logger logger = Logger.getLogger(WriteBehindQueue.class.getName());
+  // How many times a flush tries to write a batch, and how long it first waits in between.
+  private static final int WRITE_ATTEMPTS = 3;
+  private static final long RETRY_DELAY_MILLIS = 50;
+
+  private final CommentStore store;
+  private final BlockingQueue<Pending> queue;
+  private final int batchSize;
+  private final long maxDelayMillis;
+  private final Consumer<Map<String, List<Comment>>> onFlushed;
+  private final Object flushLock = new Object();
+  // When the oldest queued comment was enqueued, 0 when the queue is empty.
+  private volatile long oldestPendingMillis;
+  private volatile boolean closed;
+  private Thread flusher;
+
+  /** 
+   * @param onFlushed is told the comments of every kind each batch wrote, e.g. to invalidate
+   *    caches.
+   */
+  public WriteBehindQueue(final CommentStore store, final int capacity,
+                          final int batchSize, final long maxDelayMillis,
+                          final Consumer<Map<String, List<Comment>>> onFlushed) {
+    if (capacity <= 0 || batchSize <= 0 || maxDelayMillis <= 0) {
+      throw new IllegalArgumentException("The queue sizes and delay must be positive");
+    }
+
+    this.store = store;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.batchSize = batchSize;
+    this.maxDelayMillis = maxDelayMillis;
+    this.onFlushed = onFlushed;
+  }
+
+  /** 
+   * Starts the background thread enforcing the maximum delay, if the runtime allows one.
+   * Instances with automatic scaling don't, in which case the next enqueue enforces it.
+   */
+  public synchronized void start() {
+    if (flusher != null) {
+      return;
+    }
+
+    try {
+      flusher = ThreadManager.createBackgroundThread(this::flushPeriodically);
+      flusher.start();
+    } catch (RuntimeException e) {
+      flusher = null;
+      logger.info("No background thread available, flushing comments on enqueue");
+    }
+  }
+
+  /** 
+   * Queues a comment of the section of the given kind, to be written with the next batch.
+   *
+   * @throws IllegalStateException if the queue was closed.
+   * @throws RuntimeException the store's failure, if the queue was full and could not be
+   *    flushed, in which case the comment was not queued.
+   */
+  public void enqueue(final String kind, final Comment comment) {
+    if (closed) {
+      throw new IllegalStateException("The write-behind queue is closed");
+    }
+
+    // Backpressure: a full queue is flushed by whoever finds it full.
+    Pending pending = new Pending(kind, comment);
+    while (!queue.offer(pending)) {
+      flush(batchSize);
+    }
+
+    if (oldestPendingMillis == 0) {
+      oldestPendingMillis = System.currentTimeMillis();
+    }
+
+    // The comment is queued from here on, so a failed write is only retried later.
+    try {
+      if (queue.size() >= batchSize) {
+        flush(batchSize);
+      } else if (flusher == null && isDue()) {
+        flush(Integer.MAX_VALUE);
+      }
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, "Could not write a batch of comments", e);
+    }
+  }
+
+  /** 
+   * Returns the number of comments waiting to be written.
+   */
+  public int pending() {
+    return queue.size();
+  }
+
+  /** 
+   * Stops accepting comments and writes all the queued ones. Comments the store still
+   * refuses are logged, as nothing is left to retry them.
+   */
+  @Override
+  public void close() {
+    closed = true;
+
+    synchronized (this) {
+      if (flusher != null) {
+        flusher.interrupt();
+      }
+    }
+
+    try {
+      flush(Integer.MAX_VALUE);
+    } catch (RuntimeException e) {
+      logger.log(Level.SEVERE, "Closed with " + queue.size() + " comments left unwritten", e);
+    }
+  }
+
+  private boolean isDue() {
+    long oldest = oldestPendingMillis;
+    return oldest != 0 && System.currentTimeMillis() - oldest >= maxDelayMillis;
+  }
+
+  private void flushPeriodically() {
+    while (!closed) {
+      try {
+        Thread.sleep(maxDelayMillis);
+      } catch (InterruptedException e) {
+        return;
+      }
+
+      try {
+        flush(Integer.MAX_VALUE);
+      } catch (RuntimeException e) {
+        // The batch stays queued, and is retried on the next round.
+        logger.log(Level.WARNING, "Could not write a batch of comments", e);
+      }
+    }
+  }
+
+  /** 
+   * Writes at most {@code limit} queued comments, in batches of at most batchSize. Only this
+   * method takes comments off the queue, and only once they are written.
+   *
+   * @throws RuntimeException the store's last failure, if a batch could not be written.
+   */
+  private void flush(final int limit) {
+    synchronized (flushLock) {
+      int written = 0;
+
+      while (written < limit && !queue.isEmpty()) {
+        // Enqueuing only appends, so the head of the queue stays put while it is written.
+        List<Pending> batch = new ArrayList<>(batchSize);
+        Iterator<Pending> head = queue.iterator();
+        while (batch.size() < Math.min(batchSize, limit - written) && head.hasNext()) {
+          batch.add(head.next());
+        }
+
+        Map<String, List<Comment>> comments = new LinkedHashMap<>();
+        for (Pending pending : batch) {
+          comments.computeIfAbsent(pending.kind, kind -> new ArrayList<>()).add(pending.comment);
+        }
+
+        write(comments);
+        for (int i = 0; i < batch.size(); ++i) {
+          queue.remove();
+        }
+        if (queue.isEmpty()) {
+          oldestPendingMillis = 0;
+        }
+        written += batch.size();
+
+        onFlushed.accept(comments);
+      }
+    }
+  }
+
+  private void write(final Map<String, List<Comment>> comments) {
+    long delayMillis = RETRY_DELAY_MILLIS;
+
+    for (int attempt = 1; ; ++attempt) {
+      try {
+        store.putAll(comments);
+        return;
+      } catch (RuntimeException e) {
+        if (attempt == WRITE_ATTEMPTS) {
+          throw e;
+        }
+        logger.log(Level.INFO, "Retrying a batch of comments", e);
+      }
+
+      try {
+        Thread.sleep(delayMillis);
+      } catch (InterruptedException e) {
+        // Closing interrupts the flusher, which still tries once more.
+        Thread.currentThread().interrupt();
+      }
+      delayMillis *= 2;
+    }
+  }
+
+  /** 
+   * A queued comment, along with the kind of its section.
+   */
+  private static final class Pending {
+    private final String kind;
+    private final Comment comment;
+
+    Pending(final String kind, final Comment comment) {
+      this.kind = kind;
+      this.comment = comment;
+    }
+  }
+}
@@ -17,4 +17,51 @@ package com.google.sps.config;
 public class Constants {
   public static final Integer IMG_COUNT = 16;
   public static final String INVALID_ID = "Invalid section ID";
+  public static final Integer DEFAULT_PAGE_SIZE = 20;
+  public static final Integer MAX_PAGE_SIZE = 100;
+
+  // Write-behind mode for new comments, enabled by setting this system property to true.
+  public static final String WRITE_BEHIND_PROPERTY = "comments.writeBehind";
+  public static final Integer WRITE_BEHIND_CAPACITY = 1000;
+  public static final Integer WRITE_BEHIND_BATCH_SIZE = 50;
+  public static final Long WRITE_BEHIND_MAX_DELAY_MILLIS = 1000L;
+
+  // Comment counters are split over this many entities per section.
+  public static final Integer COUNTER_SHARDS = 8;
+  public static final Long COUNTS_TTL_MILLIS = 10000L;
+
+  // Pages shared through memcache expire on their own, in case an invalidation was lost.
+  public static final Integer SHARED_CACHE_EXPIRATION_SECONDS = 600;
+  // How long an instance serves its cached pages before checking memcache for writes from
+  // other instances again.
+  public static final Long SHARED_VERSION_TTL_MILLIS = 1000L;
+
+  // Where comments are stored: Datastore, unless this system property is set to LOG_STORAGE.
+  public static final String STORAGE_PROPERTY = "comments.storage";
+  public static final String LOG_STORAGE = "log";
+  public static final String LOG_DIRECTORY_PROPERTY = "comments.logDirectory";
+  public static final Long LOG_SEGMENT_BYTES = 4L << 20;
+  // How many full log segments of the same span are merged into one.
+  public static final Integer LOG_COMPACTION_THRESHOLD = 8;
+  // How often the log segments are compacted, in the background.
+  public static final Long LOG_COMPACTION_INTERVAL_MILLIS = 60000L;
+
+  // Set this system property to true to push new comments to the open sections, only where
+  // responses reach browsers as they are written, unlike on App Engine standard.
+  public static final String STREAM_PROPERTY = "comments.stream";
+  // New comments buffered per stream subscriber, before it has to catch up from the store.
+  public static final Integer STREAM_BUFFER_SIZE = 100;
+  // Streams are closed after this long, and browsers reconnect where they left off.
+  public static final Long STREAM_TIMEOUT_MILLIS = 60000L;
+
+  // Every user or address may post a burst of comments, then one per refill interval, to each
+  // instance: the buckets are not shared, so n instances let a key through up to n times.
+  public static final Integer POST_BURST = 5;
+  public static final Long POST_REFILL_MILLIS = 2000L;
+  public static final Integer RATE_LIMITED_KEYS = 10000;
+  // Comments written at once by an instance, past which new ones wait a little, then are shed.
+  // Kept below the max-concurrent-requests of appengine-web.xml, so an instance busy writing
+  // still serves reads, while App Engine starts more instances for the load.
+  public static final Integer MAX_CONCURRENT_WRITES = 8;
+  public static final Long WRITE_PERMIT_WAIT_MILLIS = 100L;
 }
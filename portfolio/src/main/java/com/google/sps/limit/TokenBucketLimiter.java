@@ -0,0 +1,133 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.limit;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/** 
+ * Lock-free token bucket per key, e.g. per user or client address, holding at most burst
+ * tokens and gaining one every refill interval.
+ *
+ * Every bucket is a single AtomicLong holding the time at which it will be full again, which
+ * is all a token bucket needs: a request takes a token by pushing that time one interval
+ * further, with a compare-and-set, and is refused if that would put it more than burst
+ * intervals ahead of now.
+ *
+ * The number of keys is bounded. Past the bound, full buckets are dropped first, since a new
+ * bucket is the same as a full one. If that is not enough, e.g. under a flood of distinct
+ * keys, arbitrary buckets are dropped too, which can only let their keys through sooner.
+ *
+ * Buckets live in the memory of one instance, and are not shared: behind a load balancer
+ * spreading requests over n instances, a key may take up to n times the burst. This keeps a
+ * cheap first line against a single client flooding one instance, with no round trip to a
+ * shared store per request, rather than an exact limit for the whole app.
+ */
+public class TokenBucketLimiter {
+  private final long refillNanos;
+  private final long burstNanos;
+  private final int maxKeys;
+  private final LongSupplier nanoClock;
+  private final ConcurrentMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+  private final AtomicBoolean evicting = new AtomicBoolean();
+
+  public TokenBucketLimiter(final int burst, final long refillMillis, final int maxKeys) {
+    this(burst, refillMillis, maxKeys, System::nanoTime);
+  }
+
+  /** 
+   * Same as above, reading the time in nanoseconds from the given clock, e.g. to test.
+   */
+  public TokenBucketLimiter(final int burst, final long refillMillis, final int maxKeys,
+                            final LongSupplier nanoClock) {
+    if (burst <= 0 || refillMillis <= 0 || maxKeys <= 0) {
+      throw new IllegalArgumentException("The burst, refill interval and keys must be positive");
+    }
+
+    this.refillNanos = refillMillis * 1_000_000;
+    this.burstNanos = burst * refillNanos;
+    this.maxKeys = maxKeys;
+    this.nanoClock = nanoClock;
+  }
+
+  /** 
+   * Takes a token from the bucket of a key. Returns 0 if there was one, and otherwise how
+   * many milliseconds until there is, in which case nothing was taken.
+   */
+  public long tryAcquire(final String key) {
+    AtomicLong bucket = buckets.get(key);
+    if (bucket == null) {
+      evictIfNeeded();
+      bucket = buckets.computeIfAbsent(key, absent -> new AtomicLong(Long.MIN_VALUE));
+    }
+
+    while (true) {
+      long now = nanoClock.getAsLong();
+      long fullAt = bucket.get();
+      // A bucket full since before now stays full, it doesn't bank more tokens.
+      long next = (fullAt == Long.MIN_VALUE || fullAt - now < 0 ? now : fullAt) + refillNanos;
+
+      if (next - now > burstNanos) {
+        long waitNanos = next - now - burstNanos;
+        return Math.max(1, (waitNanos + 999_999) / 1_000_000);
+      }
+
+      if (bucket.compareAndSet(fullAt, next)) {
+        return 0;
+      }
+    }
+  }
+
+  /** 
+   * Returns the number of keys currently tracked.
+   */
+  public int size() {
+    return buckets.size();
+  }
+
+  /** 
+   * Makes room for a new key once the bound is reached. Only one thread evicts at a time,
+   * the others go on without waiting, the bound being exceeded for a moment at worst.
+   */
+  private void evictIfNeeded() {
+    if (buckets.size() < maxKeys || !evicting.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      long now = nanoClock.getAsLong();
+      for (Map.Entry<String, AtomicLong> bucket : buckets.entrySet()) {
+        long fullAt = bucket.getValue().get();
+        if (fullAt == Long.MIN_VALUE || fullAt - now <= 0) {
+          buckets.remove(bucket.getKey(), bucket.getValue());
+        }
+      }
+
+      // Keeps a tenth of the room free, so a flood doesn't evict on every request.
+      Iterator<String> keys = buckets.keySet().iterator();
+      while (buckets.size() >= maxKeys - maxKeys / 10 && keys.hasNext()) {
+        keys.next();
+        keys.remove();
+      }
+    } finally {
+      evicting.set(false);
+    }
+  }
+}
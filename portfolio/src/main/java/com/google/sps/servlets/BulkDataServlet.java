@@ -0,0 +1,86 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.comment.CommentPage;
+import com.google.sps.comment.CommentStorage;
+import com.google.sps.config.Constants;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** 
+ *  Servlet that returns the first page of comments of several sections at once, so the
+ *  gallery loads all of its comments with a single request.
+ */
+@WebServlet("/data/bulk")
+public class BulkDataServlet extends HttpServlet {
+  private CommentStorage commentStorage = CommentStorage.getInstance();
+
+  /** 
+   * Expects the sections as the comma-separated ids parameter, all of them if it is missing,
+   * and an optional pageSize. Answers {"sections": {"<id>": <page>, ...}}.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    List<String> ids = new ArrayList<>();
+    String idList = request.getParameter("ids");
+
+    if (idList == null) {
+      for (int id = 1; id <= Constants.IMG_COUNT; ++id) {
+        ids.add(Integer.toString(id));
+      }
+    } else {
+      for (String id : idList.split(",")) {
+        ids.add(id.trim());
+      }
+    }
+
+    Map<String, CommentPage> pages;
+    try {
+      String pageSize = request.getParameter("pageSize");
+      pages = commentStorage.getStorageEntries("Comment", ids,
+          pageSize == null ? Constants.DEFAULT_PAGE_SIZE :
+                             Math.min(Integer.parseInt(pageSize), Constants.MAX_PAGE_SIZE));
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Malformed pagination parameter");
+      return;
+    }
+
+    if (pages == null) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, Constants.INVALID_ID);
+      return;
+    }
+
+    try (JsonWriter writer = CommentJson.open(response)) {
+      writer.beginObject();
+      writer.name("sections").beginObject();
+
+      for (Map.Entry<String, CommentPage> page : pages.entrySet()) {
+        writer.name(page.getKey());
+        CommentJson.writePage(writer, page.getValue());
+      }
+
+      writer.endObject();
+      writer.endObject();
+    }
+  }
+}
@@ -0,0 +1,60 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.comment.CommentCache;
+import com.google.sps.comment.CommentStorage;
+import com.google.sps.comment.SharedCommentCache;
+import java.io.IOException;
+import javax.servlet.annotation.HttpConstraint;
+import javax.servlet.annotation.ServletSecurity;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** 
+ *  Admin-only servlet that reports, for the cacheable reads of this instance, the share served
+ *  by its own cache, by the memcache one, and by the store, Datastore by default.
+ */
+@WebServlet("/admin/cache-stats")
+@ServletSecurity(@HttpConstraint(rolesAllowed = "admin"))
+public class CacheStatsServlet extends HttpServlet {
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    CommentCache local = CommentStorage.getInstance().getCache();
+    SharedCommentCache shared = CommentStorage.getInstance().getSharedCache();
+
+    // Every local miss is looked up in memcache, if there is one, and every memcache miss in
+    // the store.
+    long reads = local.getHits() + local.getMisses();
+    long sharedHits = shared == null ? 0 : shared.getHits();
+    long storeReads = shared == null ? local.getMisses() : shared.getMisses();
+
+    try (JsonWriter writer = CommentJson.open(response)) {
+      writer.beginObject();
+      writer.name("reads").value(reads);
+      writer.name("l1").value(ratio(local.getHits(), reads));
+      writer.name("l2").value(ratio(sharedHits, reads));
+      writer.name("datastore").value(ratio(storeReads, reads));
+      writer.endObject();
+    }
+  }
+
+  private static double ratio(final long count, final long total) {
+    return total == 0 ? 0 : (double) count / total;
+  }
+}
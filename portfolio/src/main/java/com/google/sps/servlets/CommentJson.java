@@ -0,0 +1,99 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.comment.Comment;
+import com.google.sps.comment.CommentPage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.CRC32;
+import javax.servlet.http.HttpServletResponse;
+
+/** 
+ * Writes comments as JSON straight to the response, one token at a time, so a response never
+ * has to be held in memory as a whole.
+ */
+final class CommentJson {
+  static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+
+  // Immutable, so unlike SimpleDateFormat it can be shared by all requests.
+  private static final DateTimeFormatter TIME_FORMATTER =
+      DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm").withZone(ZoneOffset.UTC);
+
+  private CommentJson() {
+    // Disallow instances.
+  }
+
+  /** 
+   * Sets up the response for JSON, and returns a writer over its output stream. The caller
+   * closes the writer, which flushes it.
+   */
+  static JsonWriter open(final HttpServletResponse response) throws IOException {
+    response.setContentType(CONTENT_TYPE);
+
+    return new JsonWriter(new BufferedWriter(
+        new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8)));
+  }
+
+  /** 
+   * Writes {"comments": [...], "cursor": ...}, the cursor being null on the last page.
+   */
+  static void writePage(final JsonWriter writer, final CommentPage page) throws IOException {
+    writer.beginObject();
+
+    writer.name("comments").beginArray();
+    for (Comment comment : page.getComments()) {
+      writeComment(writer, comment);
+    }
+    writer.endArray();
+
+    writer.name("cursor");
+    if (page.getCursor() == null) {
+      writer.nullValue();
+    } else {
+      writer.value(page.getCursor());
+    }
+
+    writer.endObject();
+  }
+
+  static void writeComment(final JsonWriter writer, final Comment comment) throws IOException {
+    writer.beginObject();
+    writer.name("id").value(id(comment));
+    writer.name("username").value(comment.getUsername());
+    writer.name("theTime").value(TIME_FORMATTER.format(Instant.ofEpochMilli(
+        comment.getCreatedAt())));
+    writer.name("createdAt").value(comment.getCreatedAt());
+    writer.name("body").value(comment.getBody());
+    writer.endObject();
+  }
+
+  /** 
+   * Returns an id telling a comment apart from all others, even those posted in the same
+   * millisecond, as "<createdAt>-<hash of the username and body>".
+   */
+  static String id(final Comment comment) {
+    CRC32 crc = new CRC32();
+    crc.update((comment.getUsername() + '\0' + comment.getBody())
+               .getBytes(StandardCharsets.UTF_8));
+    return comment.getCreatedAt() + "-" + Long.toHexString(crc.getValue());
+  }
+}
@@ -0,0 +1,55 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.LifecycleManager;
+import com.google.sps.comment.CommentStorage;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/** 
+ *  Builds the comment search index when the app starts, and makes sure the comments still
+ *  queued in write-behind mode are written before the instance goes away, be it through
+ *  App Engine's shutdown hook or the undeployment of the app.
+ */
+@WebListener
+public class CommentStorageListener implements ServletContextListener {
+  private static final Logger logger = Logger.getLogger(CommentStorageListener.class.getName());
+
+  @Override
+  public void contextInitialized(ServletContextEvent event) {
+    try {
+      CommentStorage.getInstance().rebuildSearchIndex("Comment");
+    } catch (RuntimeException e) {
+      // Searching still catches up with the sections that have counted comments.
+      logger.log(Level.WARNING, "Could not build the comment search index", e);
+    }
+
+    LifecycleManager.getInstance().setShutdownHook(new LifecycleManager.ShutdownHook() {
+      @Override
+      public void shutdown() {
+        CommentStorage.getInstance().close();
+      }
+    });
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent event) {
+    CommentStorage.getInstance().close();
+  }
+}
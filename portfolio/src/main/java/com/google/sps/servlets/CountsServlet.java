@@ -0,0 +1,46 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.comment.CommentStorage;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.Map;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** 
+ *  Servlet that returns the number of comments of every section, as {"<id>": count, ...},
+ *  for the badges of the gallery thumbnails.
+ */
+@WebServlet("/data/counts")
+public class CountsServlet extends HttpServlet {
+  private CommentStorage commentStorage = CommentStorage.getInstance();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Map<String, Long> counts = commentStorage.getCounts("Comment");
+
+    try (JsonWriter writer = CommentJson.open(response)) {
+      writer.beginObject();
+      for (Map.Entry<String, Long> count : counts.entrySet()) {
+        writer.name(count.getKey()).value(count.getValue());
+      }
+      writer.endObject();
+    }
+  }
+}
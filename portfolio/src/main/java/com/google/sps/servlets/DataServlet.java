@@ -14,11 +14,13 @@
 
 package com.google.sps.servlets;
 
+import com.google.sps.comment.CommentPage;
 import com.google.sps.comment.CommentStorage;
 import com.google.sps.config.Constants;
-import com.google.appengine.api.datastore.Entity;
-import java.util.ArrayList;
+import com.google.sps.limit.TokenBucketLimiter;
+import com.google.gson.stream.JsonWriter;
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -30,44 +32,120 @@ import javax.servlet.http.HttpServletResponse;
  */
 @WebServlet("/data")
 public class DataServlet extends HttpServlet {
-  private CommentStorage commentStorage = new CommentStorage();
+  // Not among the constants of this Servlet API version.
+  private static final int SC_TOO_MANY_REQUESTS = 429;
 
+  private CommentStorage commentStorage = CommentStorage.getInstance();
+  private TokenBucketLimiter postLimiter = new TokenBucketLimiter(Constants.POST_BURST,
+                                                                  Constants.POST_REFILL_MILLIS,
+                                                                  Constants.RATE_LIMITED_KEYS);
+
+  /** 
+   * Expects the section as the id parameter, or as the whole query string, e.g. "/data?3".
+   * The optional pageSize and cursor parameters select the page, the cursor of the next one
+   * being sent back along with the comments. The optional since parameter, in epoch
+   * milliseconds, only keeps the comments posted after it.
+   *
+   * The ETag of the response is the version of the section the comments were read at, so a
+   * poll sending it back in If-None-Match gets a 304 without the comments being queried,
+   * unless some were added since. Pages that may be missing comments get no ETag.
+   */
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    response.setContentType("text/html;");
+    String id = request.getParameter("id");
+    if (id == null) {
+      id = request.getQueryString();
+    }
+
+    Long version = commentStorage.getVersion("Comment", id);
+    if (version == null) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, Constants.INVALID_ID);
+      return;
+    }
+
+    // Makes browsers revalidate every time, instead of guessing how long the page stays fresh.
+    response.setHeader("Cache-Control", "no-cache");
+
+    if (matches(request.getHeader("If-None-Match"), etag(version))) {
+      response.setHeader("ETag", etag(version));
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    CommentPage page;
+    try {
+      String pageSize = request.getParameter("pageSize");
+      String since = request.getParameter("since");
+      page = commentStorage.getStorageEntries("Comment", id,
+          pageSize == null ? Constants.DEFAULT_PAGE_SIZE :
+                             Math.min(Integer.parseInt(pageSize), Constants.MAX_PAGE_SIZE),
+          request.getParameter("cursor"), since == null ? null : Long.valueOf(since));
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Malformed pagination parameter");
+      return;
+    }
+
+    if (page.getVersion() >= 0) {
+      response.setHeader("ETag", etag(page.getVersion()));
+    }
 
-    response.getWriter().print(
-             formatCommentsBulk(commentStorage.getStorageEntries("Comment",
-                                                                 request.getQueryString())));
+    try (JsonWriter writer = CommentJson.open(response)) {
+      CommentJson.writePage(writer, page);
+    }
   }
 
-  @Override
-  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    commentStorage.addStorageEntry(request.getParameter("username"),
-                                   request.getParameter("comment"),
-                                   request.getParameter("image-id"),
-                                   "Comment");
+  private static String etag(final long version) {
+    return "\"" + version + "\"";
   }
 
-  private String formatCommentsBulk(final Iterable<Entity> comments) {
-    if (comments == null) {
-      return Constants.INVALID_ID;
+  /** 
+   * Tells whether an If-None-Match header, a list of possibly weak ETags or "*", names the ETag.
+   */
+  private static boolean matches(final String ifNoneMatch, final String etag) {
+    if (ifNoneMatch == null) {
+      return false;
     }
 
-    StringBuilder formattedComments = new StringBuilder("[");
+    for (String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
 
-    for (Entity it : comments) {
-      formattedComments.append(formatComment(it)).append(",");
+      if (candidate.equals("*") || candidate.equals(etag)) {
+        return true;
+      }
     }
 
-    formattedComments.append("]");
-
-    return formattedComments.toString();
+    return false;
   }
 
-  private String formatComment(final Entity comment) {
-    return "{'username': '"  + comment.getProperty("username") +
-         "', 'theTime': '"   + comment.getProperty("timestamp") +
-         "', 'body': '"      + comment.getProperty("body") + "'}"; 
+  /** 
+   * Adds a comment, unless the signed-in user, or else the client address, posted too many
+   * lately to this instance, which gets a 429, or the instance is busy writing others, which
+   * gets a 503. Both tell when to retry.
+   */
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String key = request.getUserPrincipal() != null ?
+                 "user:" + request.getUserPrincipal().getName() :
+                 "address:" + request.getRemoteAddr();
+
+    long waitMillis = postLimiter.tryAcquire(key);
+    if (waitMillis > 0) {
+      response.setHeader("Retry-After", Long.toString((waitMillis + 999) / 1000));
+      response.sendError(SC_TOO_MANY_REQUESTS, "Too many comments, try again later");
+      return;
+    }
+
+    try {
+      commentStorage.addStorageEntry(request.getParameter("username"),
+                                     request.getParameter("comment"),
+                                     request.getParameter("image-id"),
+                                     "Comment");
+    } catch (RejectedExecutionException e) {
+      response.setHeader("Retry-After", "1");
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+    }
   }
 }
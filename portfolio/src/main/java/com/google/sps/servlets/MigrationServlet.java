@@ -0,0 +1,70 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.comment.CommentStorage;
+import com.google.sps.comment.TimestampMigration;
+import java.io.IOException;
+import javax.servlet.annotation.HttpConstraint;
+import javax.servlet.annotation.ServletSecurity;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** 
+ *  Admin-only servlet that runs the timestamp migration for a while, and reports how far it
+ *  got. POST to it repeatedly until it answers "done": true, or let the cron job of
+ *  WEB-INF/cron.xml GET it: App Engine marks cron requests with the X-Appengine-Cron header,
+ *  which it strips from any other request.
+ */
+@WebServlet("/admin/migrate-timestamps")
+@ServletSecurity(@HttpConstraint(rolesAllowed = "admin"))
+public class MigrationServlet extends HttpServlet {
+  private static final int BATCH_SIZE = 200;
+  // Stays well within the 60 seconds App Engine gives a request.
+  private static final long TIME_BUDGET_MILLIS = 20_000;
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!"true".equals(request.getHeader("X-Appengine-Cron"))) {
+      response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "Only cron may GET this");
+      return;
+    }
+
+    doPost(request, response);
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    DatastoreService storage = DatastoreServiceFactory.getDatastoreService();
+    TimestampMigration migration = new TimestampMigration(storage, "Comment", BATCH_SIZE,
+        CommentStorage.getInstance()::invalidate);
+
+    Entity progress = migration.run(System.currentTimeMillis() + TIME_BUDGET_MILLIS);
+
+    try (JsonWriter writer = CommentJson.open(response)) {
+      writer.beginObject();
+      writer.name("done").value((Boolean) progress.getProperty("done"));
+      writer.name("section").value((Long) progress.getProperty("section"));
+      writer.name("migrated").value((Long) progress.getProperty("migrated"));
+      writer.endObject();
+    }
+  }
+}
@@ -0,0 +1,53 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.comment.CommentCounters;
+import com.google.sps.comment.CommentStorage;
+import com.google.sps.config.Constants;
+import java.io.IOException;
+import javax.servlet.annotation.HttpConstraint;
+import javax.servlet.annotation.ServletSecurity;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** 
+ *  Admin-only servlet that resets the comment counters of every section to its actual number
+ *  of comments, and returns the new counts, as {"<id>": count, ...}. Needed once for the
+ *  comments posted before the counters existed, and after an increment failed.
+ */
+@WebServlet("/admin/recount")
+@ServletSecurity(@HttpConstraint(rolesAllowed = "admin"))
+public class RecountServlet extends HttpServlet {
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    CommentCounters counters = new CommentCounters(
+        DatastoreServiceFactory.getDatastoreService(), "Comment", Constants.COUNTS_TTL_MILLIS);
+
+    try (JsonWriter writer = CommentJson.open(response)) {
+      writer.beginObject();
+      for (int id = 1; id <= Constants.IMG_COUNT; ++id) {
+        writer.name(Integer.toString(id)).value(counters.recount(Integer.toString(id)));
+        // The count is also the version pages are cached at.
+        CommentStorage.getInstance().invalidate("Comment" + id);
+      }
+      writer.endObject();
+    }
+  }
+}
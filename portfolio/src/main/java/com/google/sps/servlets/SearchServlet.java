@@ -0,0 +1,83 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.comment.CommentStorage;
+import com.google.sps.comment.SearchPage;
+import com.google.sps.config.Constants;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** 
+ *  Servlet that searches the comments of all the sections.
+ */
+@WebServlet("/search")
+public class SearchServlet extends HttpServlet {
+  private CommentStorage commentStorage = CommentStorage.getInstance();
+
+  /** 
+   * Expects the words to look for as the q parameter, and the optional pageSize and cursor
+   * parameters. Answers {"results": [{"section": "<id>", "score": ..., "comment": {...}}, ...],
+   * "cursor": ...}, the best match first.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String query = request.getParameter("q");
+    if (query == null) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing query");
+      return;
+    }
+
+    SearchPage page;
+    try {
+      String pageSize = request.getParameter("pageSize");
+      page = commentStorage.search("Comment", query,
+          pageSize == null ? Constants.DEFAULT_PAGE_SIZE :
+                             Math.min(Integer.parseInt(pageSize), Constants.MAX_PAGE_SIZE),
+          request.getParameter("cursor"));
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Malformed pagination parameter");
+      return;
+    }
+
+    try (JsonWriter writer = CommentJson.open(response)) {
+      writer.beginObject();
+
+      writer.name("results").beginArray();
+      for (SearchPage.Hit hit : page.getHits()) {
+        writer.beginObject();
+        writer.name("section").value(hit.getKind().substring("Comment".length()));
+        writer.name("score").value(hit.getScore());
+        writer.name("comment");
+        CommentJson.writeComment(writer, hit.getComment());
+        writer.endObject();
+      }
+      writer.endArray();
+
+      writer.name("cursor");
+      if (page.getCursor() == null) {
+        writer.nullValue();
+      } else {
+        writer.value(page.getCursor());
+      }
+
+      writer.endObject();
+    }
+  }
+}
@@ -0,0 +1,256 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.comment.Comment;
+import com.google.sps.comment.CommentBroadcaster;
+import com.google.sps.comment.CommentPage;
+import com.google.sps.comment.CommentStorage;
+import com.google.sps.config.Constants;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** 
+ *  Servlet that streams the new comments of a section as server-sent events, so the gallery
+ *  doesn't have to poll /data for them. Disabled, answering 404, unless the stream system
+ *  property is set, as App Engine standard only sends a response once it is complete.
+ *
+ *  Every event is a comment, whose id names where the stream stands: the ids of the comments
+ *  sent at the newest time sent so far. A stream is closed after a while, or as soon as the
+ *  client falls too far behind, and the browser then reconnects with the id of the last event
+ *  it got, from which the stream resumes. This also delivers, late, the comments posted
+ *  through other instances, which are only read from the store when resuming.
+ */
+@WebServlet(urlPatterns = "/data/stream", asyncSupported = true)
+public class StreamServlet extends HttpServlet {
+  private CommentStorage commentStorage = CommentStorage.getInstance();
+
+  /** 
+   * Expects the section as the id parameter, and where to resume as the Last-Event-ID header
+   * or, on the first connection, the optional after parameter: the comma-separated ids of the
+   * newest comments the client has, all posted at the same time.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!Boolean.getBoolean(Constants.STREAM_PROPERTY)) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND, "Comment streaming is disabled");
+      return;
+    }
+
+    String id = request.getParameter("id");
+
+    String resumeAt = request.getHeader("Last-Event-ID");
+    if (resumeAt == null) {
+      resumeAt = request.getParameter("after");
+    }
+
+    Stream stream = new Stream(id);
+    try {
+      if (resumeAt != null && !resumeAt.isEmpty()) {
+        stream.resumeAfter(resumeAt.split(","));
+      }
+    } catch (NumberFormatException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Malformed event id");
+      return;
+    }
+
+    CommentBroadcaster.Subscription subscription =
+        commentStorage.subscribe("Comment", id, stream::schedule);
+
+    if (subscription == null) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, Constants.INVALID_ID);
+      return;
+    }
+
+    response.setContentType("text/event-stream;charset=UTF-8");
+    response.setHeader("Cache-Control", "no-cache");
+
+    AsyncContext async = request.startAsync();
+    async.setTimeout(Constants.STREAM_TIMEOUT_MILLIS);
+    stream.start(async, subscription);
+  }
+
+  /** 
+   * Writes the comments of one subscription to its response, one drain at a time, on the
+   * container's threads rather than on the ones publishing comments.
+   */
+  private final class Stream implements AsyncListener {
+    private final String id;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    // Both null until the stream starts, before which there is nothing to drain into.
+    private volatile AsyncContext async;
+    private volatile CommentBroadcaster.Subscription subscription;
+    // The ids of the comments sent, or that the client had before, as comments may be both
+    // replayed from the store and published, and those published may be out of order.
+    private final Set<String> sent = new HashSet<>();
+    // The time of the newest comment sent, or null to only send the ones yet to come, and the
+    // ids of the comments sent at that time.
+    private Long newest;
+    private final Set<String> sentAtNewest = new LinkedHashSet<>();
+    private boolean replayed;
+    private boolean completed;
+
+    Stream(final String id) {
+      this.id = id;
+    }
+
+    /** 
+     * Resumes after the comments of the given ids, replaying those posted since the newest.
+     *
+     * @throws NumberFormatException if an id is malformed.
+     */
+    void resumeAfter(final String[] ids) {
+      for (String commentId : ids) {
+        int separator = commentId.indexOf('-');
+        if (separator <= 0) {
+          throw new NumberFormatException("Not a comment id: " + commentId);
+        }
+
+        markSent(commentId, Long.parseLong(commentId.substring(0, separator)));
+      }
+    }
+
+    void start(final AsyncContext async, final CommentBroadcaster.Subscription subscription) {
+      async.addListener(this);
+      this.async = async;
+      this.subscription = subscription;
+      // Subscribed first, so no comment falls between the replay and the subscription.
+      schedule();
+    }
+
+    void schedule() {
+      if (async != null && subscription != null && scheduled.compareAndSet(false, true)) {
+        async.start(this::drain);
+      }
+    }
+
+    private synchronized void drain() {
+      scheduled.set(false);
+      if (completed) {
+        return;
+      }
+
+      try {
+        if (subscription.isOverflowed()) {
+          // The browser reconnects and resumes from the store.
+          complete();
+          return;
+        }
+
+        List<Comment> comments = new ArrayList<>();
+        if (!replayed) {
+          replayed = true;
+          if (newest != null) {
+            // From the newest millisecond sent on, as more comments may have been posted in
+            // it, and page by page, as a stream dropped for falling behind missed a buffer full.
+            String cursor = null;
+            do {
+              CommentPage page = commentStorage.getStorageEntries("Comment", id,
+                  Constants.MAX_PAGE_SIZE, cursor, newest - 1);
+              comments.addAll(page.getComments());
+              cursor = page.getCursor();
+            } while (cursor != null);
+            Collections.reverse(comments);
+          }
+        }
+        comments.addAll(subscription.drain());
+
+        ServletOutputStream output = async.getResponse().getOutputStream();
+        for (Comment comment : comments) {
+          String commentId = CommentJson.id(comment);
+          // Already sent by the replay, or before the client reconnected.
+          if (sent.contains(commentId)) {
+            continue;
+          }
+
+          markSent(commentId, comment.getCreatedAt());
+          output.write(event(comment, String.join(",", sentAtNewest))
+                           .getBytes(StandardCharsets.UTF_8));
+        }
+        output.flush();
+      } catch (IOException | RuntimeException e) {
+        // The client went away, or the store failed: the browser retries either way.
+        complete();
+      }
+    }
+
+    private void markSent(final String commentId, final long createdAt) {
+      sent.add(commentId);
+      if (newest == null || createdAt > newest) {
+        newest = createdAt;
+        sentAtNewest.clear();
+      }
+      if (createdAt == newest) {
+        sentAtNewest.add(commentId);
+      }
+    }
+
+    private void complete() {
+      if (!completed) {
+        completed = true;
+        subscription.close();
+        async.complete();
+      }
+    }
+
+    @Override
+    public void onComplete(final AsyncEvent event) {
+      subscription.close();
+    }
+
+    @Override
+    public synchronized void onTimeout(final AsyncEvent event) {
+      complete();
+    }
+
+    @Override
+    public synchronized void onError(final AsyncEvent event) {
+      complete();
+    }
+
+    @Override
+    public void onStartAsync(final AsyncEvent event) {
+      // The stream never restarts.
+    }
+  }
+
+  private static String event(final Comment comment, final String eventId)
+      throws IOException {
+    StringWriter json = new StringWriter();
+    try (JsonWriter writer = new JsonWriter(json)) {
+      CommentJson.writeComment(writer, comment);
+    }
+
+    // The writer escapes line breaks, so the comment fits on the single data line.
+    return "id: " + eventId + "\nevent: comment\ndata: " + json + "\n\n";
+  }
+}
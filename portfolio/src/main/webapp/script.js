@@ -37,15 +37,116 @@ async function openModal(target, index) {
   caption.innerHTML = target.alt;
   imageID.value = index;
 
+  purgeElement(document.getElementById('previous-comments'));
+
+  const prefetched = prefetchedComments[index];
+  let shown;
+  if (prefetched) {
+    // Only used once, so that reopening the image shows the latest comments.
+    delete prefetchedComments[index];
+    displayComments(prefetched.comments, document.getElementById('previous-comments'));
+    showMoreButton(index, prefetched.cursor);
+    shown = prefetched.comments;
+  } else {
+    shown = await loadComments(index, null);
+  }
+
+  followComments(index, shown);
+}
+
+/**
+ * Stream of the new comments of the open section, null while no section is open.
+ */
+let commentStream = null;
+
+/**
+ * Set once the server refused a stream, e.g. where streaming is disabled, so that opening
+ * other sections doesn't ask again.
+ */
+let streamUnavailable = false;
+
+function followComments(index, shown) {
+  if (streamUnavailable) {
+    return;
+  }
+
   const params = new URLSearchParams();
   params.append('id', index);
+  if (shown.length > 0) {
+    // The stream resumes after the newest comments shown, which come first.
+    const newest = shown[0].createdAt;
+    params.append('after', shown.filter((comment) => comment.createdAt === newest)
+                                .map((comment) => comment.id)
+                                .join(','));
+  }
 
-  const response = await fetch('/data?' + index, {
-                                                   method: 'GET'
+  const stream = new EventSource('/data/stream?' + params.toString());
+  stream.addEventListener('comment', (event) => {
+    displayNewComment(JSON.parse(event.data), document.getElementById('previous-comments'));
+  });
+  stream.addEventListener('error', () => {
+    // Browsers only give up on a stream the server answered with an error.
+    if (stream.readyState === EventSource.CLOSED) {
+      streamUnavailable = true;
+    }
+  });
+  commentStream = stream;
+}
+
+/**
+ * First page of comments of every section, by section ID, fetched in one request.
+ */
+let prefetchedComments = {};
+
+async function prefetchComments() {
+  const response = await fetch('/data/bulk', {
+                                               method: 'GET'
+  });
+  const bulk = await response.json();
+
+  prefetchedComments = bulk.sections;
+
+  showCommentCounts();
+}
+
+/**
+ * Shows the number of comments of every section when hovering its thumbnail.
+ */
+async function showCommentCounts() {
+  const response = await fetch('/data/counts', {
+                                                 method: 'GET'
+  });
+  const counts = await response.json();
+
+  document.querySelectorAll('img[onclick^="openModal"]').forEach((image, position) => {
+    const count = counts[position + 1];
+    image.title = count === 1 ? '1 comment' : count + ' comments';
   });
-  const comments = await response.text();
-  
-  displayComments(comments, document.getElementById('previous-comments'));
+}
+
+async function loadComments(index, cursor) {
+  const params = new URLSearchParams();
+  params.append('id', index);
+  if (cursor) {
+    params.append('cursor', cursor);
+  }
+
+  const response = await fetch('/data?' + params.toString(), {
+                                                                method: 'GET'
+  });
+  const page = await response.json();
+
+  displayComments(page.comments, document.getElementById('previous-comments'));
+  showMoreButton(index, page.cursor);
+
+  return page.comments;
+}
+
+function showMoreButton(index, cursor) {
+  const button = document.getElementById('more-comments');
+
+  button.style.display = cursor ? 'block' : 'none';
+  button.onclick = () => loadComments(index, cursor);
 }
 
 function purgeElement(div) {
@@ -55,26 +156,39 @@ function purgeElement(div) {
 }
 
 function displayComments(comments, commSection) {
-  const commentsJSON = eval(comments);
-
-  purgeElement(commSection);
-
-  for (let i = 0; i < commentsJSON.length; ++i) {
+  for (let i = 0; i < comments.length; ++i) {
     const commentHeader = document.createElement('h5');
-    commentHeader.innerText = commentsJSON[i].username + ' said at ' +
-                              commentsJSON[i].theTime + ':';
+    commentHeader.innerText = comments[i].username + ' said at ' +
+                              comments[i].theTime + ':';
     commSection.appendChild(commentHeader);
 
     const commentBody = document.createElement('div');
-    commentBody.innerText = commentsJSON[i].body;
+    commentBody.innerText = comments[i].body;
     commSection.appendChild(commentBody);
   }
 }
 
+function displayNewComment(comment, commSection) {
+  const commentHeader = document.createElement('h5');
+  commentHeader.innerText = comment.username + ' said at ' + comment.theTime + ':';
+
+  const commentBody = document.createElement('div');
+  commentBody.innerText = comment.body;
+
+  // The newest comments come first.
+  commSection.insertBefore(commentBody, commSection.firstChild);
+  commSection.insertBefore(commentHeader, commentBody);
+}
+
 function closeModal() {
   const modal = document.getElementById('modal');
 
   modal.style.display = 'none';
+
+  if (commentStream) {
+    commentStream.close();
+    commentStream = null;
+  }
 }
 
 function submitComment() {
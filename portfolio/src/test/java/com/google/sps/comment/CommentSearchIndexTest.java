@@ -0,0 +1,209 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class CommentSearchIndexTest {
+  private static final String KIND = "Comment1";
+
+  @Test
+  public void frequentTermsInShortCommentsRankFirst() {
+    CommentSearchIndex index = new CommentSearchIndex();
+    index.add(KIND, new Comment("u", 1, "apple pear plum grape"));
+    index.add(KIND, new Comment("u", 2, "apple apple"));
+    index.add(KIND, new Comment("u", 3, "pear"));
+
+    Assert.assertEquals(bodies("apple apple", "apple pear plum grape"),
+                        bodies(index.search("Apple", 10, null)));
+  }
+
+  @Test
+  public void rareTermsWeighMore() {
+    CommentSearchIndex index = new CommentSearchIndex();
+    index.add(KIND, new Comment("u", 1, "common rare"));
+    index.add(KIND, new Comment("u", 2, "common rare"));
+    index.add(KIND, new Comment("u", 3, "common one"));
+    index.add(KIND, new Comment("u", 4, "common two"));
+    index.add(KIND, new Comment("u", 5, "unrelated"));
+
+    SearchPage page = index.search("common rare", 2, null);
+    // Equal scores go the newest first.
+    Assert.assertEquals(2, page.getHits().get(0).getComment().getCreatedAt());
+    Assert.assertEquals(1, page.getHits().get(1).getComment().getCreatedAt());
+    Assert.assertTrue(page.getHits().get(1).getScore() > 2 * scoreOf("common", index));
+
+    SearchPage next = index.search("common rare", 2, page.getCursor());
+    Assert.assertEquals(4, next.getHits().get(0).getComment().getCreatedAt());
+    Assert.assertEquals(2, next.getHits().size());
+    Assert.assertNull(next.getCursor());
+  }
+
+  @Test
+  public void largeGapsAndFrequenciesSurviveTheEncoding() {
+    CommentSearchIndex index = new CommentSearchIndex();
+    index.add(KIND, new Comment("u", 0, "needle"));
+    for (int filler = 1; filler < 20_000; ++filler) {
+      index.add(KIND, new Comment("u", filler, "hay"));
+    }
+    StringBuilder body = new StringBuilder();
+    for (int occurrence = 0; occurrence < 300; ++occurrence) {
+      body.append("needle ");
+    }
+    index.add(KIND, new Comment("u", 20_000, body.toString()));
+    index.add(KIND, new Comment("u", 20_001, "needle hay"));
+
+    SearchPage page = index.search("needle", 10, null);
+    Assert.assertEquals(3, page.getHits().size());
+    Assert.assertEquals(20_000, page.getHits().get(0).getComment().getCreatedAt());
+    Assert.assertEquals(0, page.getHits().get(1).getComment().getCreatedAt());
+    Assert.assertEquals(20_001, page.getHits().get(2).getComment().getCreatedAt());
+    Assert.assertEquals(20_000, index.search("hay", 100_000, null).getHits().size());
+  }
+
+  @Test
+  public void rebuildKeepsTheCommentsAddedMeanwhile() {
+    CommentSearchIndex index = new CommentSearchIndex();
+    long now = System.currentTimeMillis();
+    Comment old = new Comment("u", now - 3_600_000, "old");
+    Comment stored = new Comment("u", now, "stored");
+    Comment unstored = new Comment("u", now, "unstored");
+    index.add(KIND, new Comment("u", 1, "dropped"));
+
+    // Both are added while the store is read, but only the first one is in it.
+    List<Comment> comments = new ArrayList<>();
+    comments.add(stored);
+    comments.add(old);
+    index.rebuild(new ListStore(comments, () -> {
+      index.add(KIND, stored);
+      index.add(KIND, unstored);
+    }), Collections.singletonList(KIND), 10);
+
+    Assert.assertEquals(3, index.size());
+    Assert.assertEquals(3, index.size(KIND));
+    Assert.assertEquals(1, index.search("stored", 10, null).getHits().size());
+    Assert.assertEquals(1, index.search("unstored", 10, null).getHits().size());
+    Assert.assertTrue(index.search("dropped", 10, null).getHits().isEmpty());
+    Assert.assertEquals(now, (long) index.newest(KIND));
+  }
+
+  @Test
+  public void rebuildRefusesToRunTwice() {
+    CommentSearchIndex index = new CommentSearchIndex();
+    try {
+      index.rebuild(new ListStore(Collections.emptyList(), () ->
+          index.rebuild(new ListStore(Collections.emptyList(), () -> { }),
+                            Collections.singletonList(KIND), 10)),
+          Collections.singletonList(KIND), 10);
+      Assert.fail("The nested rebuild should have been refused");
+    } catch (IllegalStateException e) {
+      // The nested rebuild.
+    }
+
+    // The failed rebuild let go of the index.
+    index.rebuild(new ListStore(Collections.emptyList(), () -> { }),
+                  Collections.singletonList(KIND), 10);
+  }
+
+  @Test
+  public void commentsReadBackAreOnlyIndexedOnce() {
+    CommentSearchIndex index = new CommentSearchIndex();
+    Assert.assertNull(index.catchUpSince(KIND));
+    index.add(KIND, new Comment("u", 100_000, "first"));
+    Assert.assertEquals(100_000 - 60_001, (long) index.catchUpSince(KIND));
+
+    Assert.assertFalse(index.addIfAbsent(KIND, new Comment("u", 100_000, "first")));
+    Assert.assertTrue(index.addIfAbsent(KIND, new Comment("u", 100_000, "same time")));
+    Assert.assertTrue(index.addIfAbsent(KIND, new Comment("u", 99_000, "stored late")));
+    Assert.assertFalse(index.addIfAbsent(KIND, new Comment("u", 99_000, "stored late")));
+    Assert.assertTrue(index.addIfAbsent(KIND, new Comment("u", 100_001, "newer")));
+    Assert.assertFalse(index.addIfAbsent(KIND, new Comment("u", 1_000, "out of the window")));
+    Assert.assertEquals(4, index.size(KIND));
+  }
+
+  private static double scoreOf(final String query, final CommentSearchIndex index) {
+    return index.search(query, 1, null).getHits().get(0).getScore();
+  }
+
+  private static List<String> bodies(final String... bodies) {
+    List<String> list = new ArrayList<>();
+    Collections.addAll(list, bodies);
+    return list;
+  }
+
+  private static List<String> bodies(final SearchPage page) {
+    List<String> bodies = new ArrayList<>();
+    for (SearchPage.Hit hit : page.getHits()) {
+      bodies.add(hit.getComment().getBody());
+    }
+
+    return bodies;
+  }
+
+  /** 
+   * Serves a fixed list of comments of one section as a single page, running a callback the
+   * first time it is queried.
+   */
+  private static final class ListStore implements CommentStore {
+    private final List<Comment> comments;
+    private Runnable onQuery;
+
+    ListStore(final List<Comment> comments, final Runnable onQuery) {
+      this.comments = comments;
+      this.onQuery = onQuery;
+    }
+
+    @Override
+    public void putAll(final Map<String, List<Comment>> comments) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CommentPage query(final String kind, final int pageSize, final String cursor,
+                             final Long since) {
+      if (onQuery != null) {
+        Runnable callback = onQuery;
+        onQuery = null;
+        callback.run();
+      }
+
+      return new CommentPage(KIND.equals(kind) ? comments : Collections.emptyList(), null);
+    }
+
+    @Override
+    public long count(final String kind) {
+      return KIND.equals(kind) ? comments.size() : 0;
+    }
+
+    @Override
+    public Map<String, Long> counts(final Collection<String> kinds) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      // Nothing to release.
+    }
+  }
+}
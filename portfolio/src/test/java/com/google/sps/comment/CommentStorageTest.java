@@ -0,0 +1,167 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** 
+ * Two instances sharing a store and memcache, as two App Engine instances would.
+ */
+@RunWith(JUnit4.class)
+public final class CommentStorageTest {
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalMemcacheServiceTestConfig());
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private LogCommentStore store;
+  private CommentStorage first;
+  private CommentStorage second;
+
+  @Before
+  public void setUp() throws IOException {
+    helper.setUp();
+    store = LogCommentStore.open(folder.getRoot().toPath(), 1 << 20, 8);
+    first = new CommentStorage(store, sharedCache());
+    second = new CommentStorage(store, sharedCache());
+  }
+
+  @After
+  public void tearDown() {
+    store.close();
+    helper.tearDown();
+  }
+
+  @Test
+  public void instancesShareTheFirstPage() {
+    first.addStorageEntry("A", "first", "1", "Comment");
+
+    CommentPage page = first.getStorageEntries("Comment", "1");
+    Assert.assertEquals(1, page.getVersion());
+    Assert.assertEquals(1, first.getSharedCache().getMisses());
+
+    // Never read by the second instance, yet already in memcache.
+    Assert.assertEquals("first",
+                        second.getStorageEntries("Comment", "1").getComments().get(0).getBody());
+    Assert.assertEquals(1, second.getSharedCache().getHits());
+
+    // Served by the cache of the instance, memcache only telling it is still current.
+    second.getStorageEntries("Comment", "1");
+    Assert.assertEquals(1, second.getCache().getHits());
+    Assert.assertEquals(1, second.getSharedCache().getHits());
+  }
+
+  @Test
+  public void writeThroughOneInstanceReachesTheOther() {
+    first.addStorageEntry("A", "first", "1", "Comment");
+    first.getStorageEntries("Comment", "1");
+    Assert.assertEquals(1, first.getStorageEntries("Comment", "1").getComments().size());
+    Assert.assertEquals(1, first.getCache().getHits());
+
+    second.addStorageEntry("B", "second", "1", "Comment");
+
+    // The page the first instance still holds was read at an older shared version.
+    CommentPage page = first.getStorageEntries("Comment", "1");
+    Assert.assertEquals(2, page.getVersion());
+    Assert.assertEquals("second", page.getComments().get(0).getBody());
+    Assert.assertEquals(1, first.getCache().getHits());
+  }
+
+  @Test
+  public void sectionsReadTogetherFollowOtherInstances() {
+    first.addStorageEntry("A", "first", "1", "Comment");
+    first.addStorageEntry("A", "other", "2", "Comment");
+    first.getStorageEntries("Comment", Arrays.asList("1", "2"), 20);
+
+    second.addStorageEntry("B", "second", "2", "Comment");
+
+    Map<String, CommentPage> pages =
+        first.getStorageEntries("Comment", Arrays.asList("1", "2"), 20);
+    Assert.assertEquals(1, pages.get("1").getComments().size());
+    Assert.assertEquals("second", pages.get("2").getComments().get(0).getBody());
+    Assert.assertEquals(1, first.getCache().getHits());
+  }
+
+  @Test
+  public void searchFindsCommentsStoredThroughOtherInstances() {
+    first.addStorageEntry("A", "first", "1", "Comment");
+    Assert.assertEquals(1, first.search("Comment", "first", 10, null).getHits().size());
+
+    // Stored by another instance in the same millisecond as the one already indexed.
+    long createdAt = first.getStorageEntries("Comment", "1").getComments().get(0).getCreatedAt();
+    store.putAll(Collections.singletonMap("Comment1", Collections.singletonList(
+        new Comment("B", createdAt, "second"))));
+
+    Assert.assertEquals(1, first.search("Comment", "second", 10, null).getHits().size());
+    Assert.assertEquals(1, first.search("Comment", "first", 10, null).getHits().size());
+
+    // Timestamped before the indexed ones, but stored after them, e.g. written behind.
+    store.putAll(Collections.singletonMap("Comment1", Collections.singletonList(
+        new Comment("C", createdAt - 500, "third"))));
+
+    Assert.assertEquals(1, first.search("Comment", "third", 10, null).getHits().size());
+    Assert.assertEquals(1, first.search("Comment", "second", 10, null).getHits().size());
+    Assert.assertEquals(3, first.search("Comment", "a b c", 10, null).getHits().size());
+  }
+
+  @Test
+  public void lookupsSkippedWithoutMemcacheAreMisses() {
+    // As if memcache could not be reached.
+    CommentStorage unreachable = new CommentStorage(store, new SharedCommentCache(
+        MemcacheServiceFactory.getMemcacheService(), 600) {
+      @Override
+      public long version(final String section) {
+        return 0;
+      }
+
+      @Override
+      public Map<String, Long> versions(final Collection<String> sections) {
+        Map<String, Long> versions = new HashMap<>();
+        sections.forEach(section -> versions.put(section, 0L));
+        return versions;
+      }
+    });
+    unreachable.addStorageEntry("A", "first", "1", "Comment");
+
+    unreachable.getStorageEntries("Comment", "1");
+    unreachable.getStorageEntries("Comment", Arrays.asList("1", "2"), 20);
+
+    // Every read is a miss of both caches, so the shares of the reads add up.
+    Assert.assertEquals(0, unreachable.getCache().getHits());
+    Assert.assertEquals(3, unreachable.getCache().getMisses());
+    Assert.assertEquals(3, unreachable.getSharedCache().getMisses());
+  }
+
+  private static SharedCommentCache sharedCache() {
+    return new SharedCommentCache(MemcacheServiceFactory.getMemcacheService(), 600);
+  }
+}
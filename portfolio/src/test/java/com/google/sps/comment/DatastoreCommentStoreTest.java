@@ -0,0 +1,116 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.dev.HighRepJobPolicy;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.config.Constants;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class DatastoreCommentStoreTest {
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig()
+          .setAlternateHighRepJobPolicyClass(LaggingPolicy.class),
+      new LocalMemcacheServiceTestConfig());
+
+  private DatastoreCommentStore store;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    DatastoreService storage = DatastoreServiceFactory.getDatastoreService();
+    store = new DatastoreCommentStore(storage, DatastoreServiceFactory.getAsyncDatastoreService(),
+                                      new CommentCounters(storage, "Comment", 0));
+  }
+
+  @After
+  public void tearDown() {
+    LaggingPolicy.lagging = false;
+    helper.tearDown();
+  }
+
+  @Test
+  public void rewrittenCommentsAreStoredOnce() {
+    Map<String, List<Comment>> comments = Collections.singletonMap("Comment1", Arrays.asList(
+        new Comment("a", "A", 1, "first"), new Comment("b", "B", 2, "second")));
+
+    store.putAll(comments);
+    // As a retry of a put that timed out after it was committed would.
+    store.putAll(comments);
+
+    List<Comment> stored = store.query("Comment1", 10, null, null).getComments();
+    Assert.assertEquals(2, stored.size());
+    Assert.assertEquals("b", stored.get(0).getId());
+    Assert.assertEquals("a", stored.get(1).getId());
+  }
+
+  @Test
+  public void fullPageMissingTheNewestCommentGetsNoVersion() throws InterruptedException {
+    CommentStorage storage = new CommentStorage(null, null);
+    int pageSize = Constants.DEFAULT_PAGE_SIZE;
+    for (int comment = 0; comment < pageSize + 5; ++comment) {
+      storage.addStorageEntry("A", "comment " + comment, "1", "Comment");
+    }
+    Assert.assertEquals(pageSize + 5, storage.getStorageEntries("Comment", "1").getVersion());
+
+    // Counted, but not yet seen by queries, and posted strictly after the others.
+    Thread.sleep(5);
+    LaggingPolicy.lagging = true;
+    storage.addStorageEntry("B", "late", "1", "Comment");
+
+    CommentPage lagging = storage.getStorageEntries("Comment", "1");
+    Assert.assertEquals(pageSize, lagging.getComments().size());
+    Assert.assertNotEquals("late", lagging.getComments().get(0).getBody());
+    Assert.assertEquals(-1, lagging.getVersion());
+
+    LaggingPolicy.lagging = false;
+    CommentPage caughtUp = storage.getStorageEntries("Comment", "1");
+    Assert.assertEquals("late", caughtUp.getComments().get(0).getBody());
+    Assert.assertEquals(pageSize + 6, caughtUp.getVersion());
+  }
+
+  /** 
+   * Leaves the comments written while lagging out of queries until it stops, as Datastore's
+   * eventually consistent queries may. Counters are always up to date, as they are read by key.
+   */
+  public static final class LaggingPolicy implements HighRepJobPolicy {
+    static volatile boolean lagging;
+
+    @Override
+    public boolean shouldApplyNewJob(final Key entityGroup) {
+      return !lagging || entityGroup.getKind().equals("CommentCounterShard");
+    }
+
+    @Override
+    public boolean shouldRollForwardExistingJob(final Key entityGroup) {
+      return !lagging;
+    }
+  }
+}
@@ -0,0 +1,234 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class LogCommentStoreTest {
+  private static final String KIND = "Comment1";
+  // Small enough for every record to start a segment of its own.
+  private static final long ONE_RECORD = 1;
+  private static final long ONE_SEGMENT = 1 << 20;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void reopeningCutsOffATornRecord() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    try (LogCommentStore store = open(ONE_SEGMENT, 2)) {
+      append(store, 1, 3);
+    }
+
+    Path segment = directory.resolve(KIND + ".1-1.log");
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 3);
+    }
+
+    try (LogCommentStore store = open(ONE_SEGMENT, 2)) {
+      Assert.assertEquals(2, store.count(KIND));
+      Assert.assertEquals(bodies(2, 1), bodies(store.query(KIND, 10, null, null)));
+
+      // Appended right after the last whole record.
+      append(store, 4, 4);
+    }
+
+    try (LogCommentStore store = open(ONE_SEGMENT, 2)) {
+      Assert.assertEquals(bodies(4, 2, 1), bodies(store.query(KIND, 10, null, null)));
+    }
+  }
+
+  @Test
+  public void reopeningDropsLeftoversOfAnInterruptedCompaction() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    try (LogCommentStore store = open(ONE_RECORD, 2)) {
+      append(store, 1, 3);
+    }
+    Assert.assertTrue(Files.exists(directory.resolve(KIND + ".1-2.log")));
+
+    // A merge that never got renamed, and a segment that got merged but never deleted.
+    Files.write(directory.resolve(KIND + ".3-4.log.tmp"), new byte[] {1, 2, 3});
+    Files.copy(directory.resolve(KIND + ".1-2.log"), directory.resolve(KIND + ".2-2.log"));
+
+    try (LogCommentStore store = open(ONE_RECORD, 2)) {
+      Assert.assertEquals(3, store.count(KIND));
+      Assert.assertEquals(bodies(3, 2, 1), bodies(store.query(KIND, 10, null, null)));
+    }
+    Assert.assertFalse(Files.exists(directory.resolve(KIND + ".3-4.log.tmp")));
+    Assert.assertFalse(Files.exists(directory.resolve(KIND + ".2-2.log")));
+  }
+
+  @Test
+  public void cursorSurvivesAppendsAndCompaction() throws IOException {
+    try (LogCommentStore store = open(ONE_RECORD, 2)) {
+      append(store, 1, 5);
+
+      CommentPage first = store.query(KIND, 2, null, null);
+      Assert.assertEquals(bodies(5, 4), bodies(first));
+
+      // Enough to merge the segments the cursor points into, more than once.
+      append(store, 6, 20);
+
+      CommentPage second = store.query(KIND, 2, first.getCursor(), null);
+      Assert.assertEquals(bodies(3, 2), bodies(second));
+      CommentPage third = store.query(KIND, 2, second.getCursor(), null);
+      Assert.assertEquals(bodies(1), bodies(third));
+      Assert.assertNull(third.getCursor());
+    }
+  }
+
+  @Test
+  public void sinceKeepsTheNewerComments() throws IOException {
+    try (LogCommentStore store = open(ONE_SEGMENT, 2)) {
+      append(store, 1, 5);
+
+      Assert.assertEquals(bodies(5, 4), bodies(store.query(KIND, 10, null, 3L)));
+      Assert.assertEquals(bodies(5), bodies(store.query(KIND, 1, null, 3L)));
+      Assert.assertTrue(store.query(KIND, 10, null, 5L).getComments().isEmpty());
+      Assert.assertEquals(bodies(2, 1), bodies(store.query(KIND, 10, "2", null)));
+    }
+  }
+
+  @Test
+  public void retriedWriteOnlyAppendsWhatIsMissing() throws IOException {
+    Map<String, List<Comment>> partial = new LinkedHashMap<>();
+    partial.put(KIND, Collections.singletonList(new Comment("a", "A", 1, "first")));
+    partial.put("Not a kind", Collections.singletonList(new Comment("b", "B", 2, "second")));
+
+    Map<String, List<Comment>> retried = new LinkedHashMap<>();
+    retried.put(KIND, Collections.singletonList(new Comment("a", "A", 1, "first")));
+    retried.put("Comment2", Collections.singletonList(new Comment("b", "B", 2, "second")));
+
+    try (LogCommentStore store = open(ONE_SEGMENT, 2)) {
+      try {
+        store.putAll(partial);
+        Assert.fail("The second section is invalid");
+      } catch (IllegalArgumentException e) {
+        // Failed after appending the first section.
+      }
+      Assert.assertEquals(1, store.count(KIND));
+
+      store.putAll(retried);
+      Assert.assertEquals(1, store.count(KIND));
+      Assert.assertEquals(1, store.count("Comment2"));
+    }
+
+    // The ids are read back on open.
+    try (LogCommentStore store = open(ONE_SEGMENT, 2)) {
+      store.putAll(retried);
+      Assert.assertEquals(1, store.count(KIND));
+      Assert.assertEquals("a", store.query(KIND, 10, null, null).getComments().get(0).getId());
+    }
+  }
+
+  @Test
+  public void mergedSegmentsAreMergedAgain() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    try (LogCommentStore store = open(ONE_RECORD, 2)) {
+      append(store, 1, 50);
+
+      // 49 full segments in tiers of 32, 16 and 1, plus the active one.
+      Assert.assertEquals(4, files(directory));
+      Assert.assertTrue(Files.exists(directory.resolve(KIND + ".1-32.log")));
+      Assert.assertEquals(50, store.query(KIND, 100, null, null).getComments().size());
+    }
+
+    try (LogCommentStore store = open(ONE_RECORD, 2)) {
+      Assert.assertEquals(50, store.count(KIND));
+    }
+  }
+
+  @Test
+  public void backgroundCompactionMergesWhileWritesGoOn() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    try (LogCommentStore store = open(ONE_RECORD, 2)) {
+      store.start(1);
+      append(store, 1, 5);
+      CommentPage first = store.query(KIND, 2, null, null);
+      append(store, 6, 50);
+
+      // Same shape as when every write compacts, once the background thread caught up.
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (files(directory) > 4 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      Assert.assertEquals(4, files(directory));
+      Assert.assertTrue(Files.exists(directory.resolve(KIND + ".1-32.log")));
+      Assert.assertEquals(bodies(50, 49), bodies(store.query(KIND, 2, null, null)));
+      Assert.assertEquals(bodies(3, 2), bodies(store.query(KIND, 2, first.getCursor(), null)));
+    }
+
+    try (LogCommentStore store = open(ONE_RECORD, 2)) {
+      Assert.assertEquals(50, store.count(KIND));
+      Assert.assertEquals(50, store.query(KIND, 100, null, null).getComments().size());
+    }
+  }
+
+  private LogCommentStore open(final long segmentBytes, final int compactionThreshold)
+      throws IOException {
+    return LogCommentStore.open(folder.getRoot().toPath(), segmentBytes, compactionThreshold);
+  }
+
+  /** 
+   * Appends comments numbered from first to last, each posted at the time of its number.
+   */
+  private static void append(final LogCommentStore store, final int first, final int last) {
+    for (int number = first; number <= last; ++number) {
+      store.putAll(Collections.singletonMap(KIND, Collections.singletonList(
+          new Comment("A", number, Integer.toString(number)))));
+    }
+  }
+
+  private static List<String> bodies(final int... numbers) {
+    List<String> bodies = new ArrayList<>();
+    for (int number : numbers) {
+      bodies.add(Integer.toString(number));
+    }
+
+    return bodies;
+  }
+
+  private static List<String> bodies(final CommentPage page) {
+    List<String> bodies = new ArrayList<>();
+    for (Comment comment : page.getComments()) {
+      bodies.add(comment.getBody());
+    }
+
+    return bodies;
+  }
+
+  private static long files(final Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+}
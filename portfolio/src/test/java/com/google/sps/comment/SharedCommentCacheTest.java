@@ -0,0 +1,116 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class SharedCommentCacheTest {
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalMemcacheServiceTestConfig());
+
+  private SharedCommentCache cache;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    cache = new SharedCommentCache(MemcacheServiceFactory.getMemcacheService(), 600);
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void pageIsCachedAtItsVersion() {
+    long version = cache.version("Comment1");
+    Assert.assertNotEquals(0, version);
+    Assert.assertEquals(version, cache.version("Comment1"));
+
+    Assert.assertNull(cache.get("Comment1", version));
+    cache.put("Comment1", version, page("first", 1));
+
+    CommentPage cached = cache.get("Comment1", version);
+    Assert.assertEquals("first", cached.getComments().get(0).getBody());
+    Assert.assertEquals(1, cached.getVersion());
+    Assert.assertNull(cache.get("Comment1", version + 1));
+    Assert.assertEquals(1, cache.getHits());
+    Assert.assertEquals(2, cache.getMisses());
+  }
+
+  @Test
+  public void invalidationMovesToANewVersion() {
+    long version = cache.version("Comment1");
+    cache.put("Comment1", version, page("first", 1));
+
+    cache.invalidate("Comment1");
+
+    long next = cache.version("Comment1");
+    Assert.assertNotEquals(version, next);
+    Assert.assertNull(cache.get("Comment1", next));
+  }
+
+  @Test
+  public void sectionsAreLookedUpTogether() {
+    Map<String, Long> versions = cache.versions(Arrays.asList("Comment1", "Comment2"));
+    Assert.assertEquals(cache.version("Comment1"), (long) versions.get("Comment1"));
+    Assert.assertEquals(cache.version("Comment2"), (long) versions.get("Comment2"));
+
+    cache.put("Comment1", versions.get("Comment1"), page("first", 1));
+    cache.invalidate("Comment2");
+
+    Map<String, CommentPage> found = cache.getAll(versions);
+    Assert.assertEquals(Collections.singleton("Comment1"), found.keySet());
+
+    Map<String, Long> stale = new HashMap<>(versions);
+    stale.put("Comment1", versions.get("Comment1") + 1);
+    Assert.assertTrue(cache.getAll(stale).isEmpty());
+  }
+
+  @Test
+  public void versionsAreRememberedForTheTtl() {
+    SharedCommentCache remembering =
+        new SharedCommentCache(MemcacheServiceFactory.getMemcacheService(), 600, 60_000);
+    long version = remembering.version("Comment1");
+
+    // Written through another instance, not checked again before the TTL.
+    cache.invalidate("Comment1");
+    Assert.assertEquals(version, remembering.version("Comment1"));
+    Assert.assertEquals(version,
+                        (long) remembering.versions(Arrays.asList("Comment1")).get("Comment1"));
+    Assert.assertNotEquals(version, cache.version("Comment1"));
+
+    // Written through this one, seen right away.
+    remembering.invalidate("Comment1");
+    Assert.assertEquals(cache.version("Comment1"), remembering.version("Comment1"));
+  }
+
+  private static CommentPage page(final String body, final long version) {
+    return new CommentPage(Collections.singletonList(new Comment("A", 1, body)), null, version);
+  }
+}
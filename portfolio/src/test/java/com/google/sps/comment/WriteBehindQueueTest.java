@@ -0,0 +1,193 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comment;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class WriteBehindQueueTest {
+  private static final int BATCH_SIZE = 2;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void failedBatchStaysQueued() {
+    FlakyStore store = new FlakyStore();
+    List<Comment> flushed = new ArrayList<>();
+    WriteBehindQueue queue = new WriteBehindQueue(store, 10, BATCH_SIZE, 60_000,
+        comments -> comments.values().forEach(flushed::addAll));
+
+    // Fails every attempt of the first flush, which the enqueue swallows.
+    store.failures = 3;
+    queue.enqueue("Comment1", new Comment("A", 1, "first"));
+    queue.enqueue("Comment2", new Comment("B", 2, "second"));
+
+    Assert.assertEquals(2, queue.pending());
+    Assert.assertTrue(store.written.isEmpty());
+    Assert.assertTrue(flushed.isEmpty());
+
+    // Fails once, then the retry writes the same batch.
+    store.failures = 1;
+    queue.enqueue("Comment1", new Comment("C", 3, "third"));
+    queue.close();
+
+    Assert.assertEquals(0, queue.pending());
+    Assert.assertEquals(3, store.written.size());
+    Assert.assertEquals("first", store.written.get(0).getBody());
+    Assert.assertEquals("third", store.written.get(2).getBody());
+    Assert.assertEquals(store.written, flushed);
+  }
+
+  @Test
+  public void fullQueueRejectsWhenTheStoreFails() {
+    FlakyStore store = new FlakyStore();
+    WriteBehindQueue queue = new WriteBehindQueue(store, BATCH_SIZE, BATCH_SIZE + 1, 60_000,
+        comments -> { });
+
+    queue.enqueue("Comment1", new Comment("A", 1, "first"));
+    queue.enqueue("Comment1", new Comment("B", 2, "second"));
+
+    store.failures = Integer.MAX_VALUE;
+    try {
+      queue.enqueue("Comment1", new Comment("C", 3, "third"));
+      Assert.fail("The full queue could not be flushed");
+    } catch (IllegalStateException e) {
+      // The store's failure.
+    }
+
+    Assert.assertEquals(BATCH_SIZE, queue.pending());
+  }
+
+  @Test
+  public void batchRetriedAfterAPartialWriteIsStoredOnce() throws IOException {
+    try (LogCommentStore log = LogCommentStore.open(folder.getRoot().toPath(), 1 << 20, 8)) {
+      // Stores the first section of the first batch, then fails, as a timed out write would.
+      CommentStore store = new ForwardingStore(log) {
+        private boolean failed;
+
+        @Override
+        public void putAll(final Map<String, List<Comment>> comments) {
+          if (failed) {
+            super.putAll(comments);
+            return;
+          }
+
+          failed = true;
+          String first = comments.keySet().iterator().next();
+          super.putAll(Collections.singletonMap(first, comments.get(first)));
+          throw new IllegalStateException("Timed out");
+        }
+      };
+
+      WriteBehindQueue queue = new WriteBehindQueue(store, 10, BATCH_SIZE, 60_000,
+                                                    comments -> { });
+      queue.enqueue("Comment1", new Comment("a", "A", 1, "first"));
+      queue.enqueue("Comment2", new Comment("b", "B", 2, "second"));
+      queue.close();
+
+      Assert.assertEquals(0, queue.pending());
+      Assert.assertEquals(1, log.count("Comment1"));
+      Assert.assertEquals(1, log.count("Comment2"));
+    }
+  }
+
+  /** 
+   * Hands everything to another store, for tests to override some of it.
+   */
+  private static class ForwardingStore implements CommentStore {
+    private final CommentStore store;
+
+    ForwardingStore(final CommentStore store) {
+      this.store = store;
+    }
+
+    @Override
+    public void putAll(final Map<String, List<Comment>> comments) {
+      store.putAll(comments);
+    }
+
+    @Override
+    public CommentPage query(final String kind, final int pageSize, final String cursor,
+                             final Long since) {
+      return store.query(kind, pageSize, cursor, since);
+    }
+
+    @Override
+    public long count(final String kind) {
+      return store.count(kind);
+    }
+
+    @Override
+    public Map<String, Long> counts(final Collection<String> kinds) {
+      return store.counts(kinds);
+    }
+
+    @Override
+    public void close() {
+      store.close();
+    }
+  }
+
+  /** 
+   * Keeps comments in a list, after failing the given number of writes.
+   */
+  private static final class FlakyStore implements CommentStore {
+    private final List<Comment> written = new ArrayList<>();
+    private int failures;
+
+    @Override
+    public void putAll(final Map<String, List<Comment>> comments) {
+      if (failures > 0) {
+        --failures;
+        throw new IllegalStateException("Store unavailable");
+      }
+
+      comments.values().forEach(written::addAll);
+    }
+
+    @Override
+    public CommentPage query(final String kind, final int pageSize, final String cursor,
+                             final Long since) {
+      return new CommentPage(Collections.emptyList(), null);
+    }
+
+    @Override
+    public long count(final String kind) {
+      return 0;
+    }
+
+    @Override
+    public Map<String, Long> counts(final Collection<String> kinds) {
+      return Collections.emptyMap();
+    }
+
+    @Override
+    public void close() {
+      // Nothing to release.
+    }
+  }
+}
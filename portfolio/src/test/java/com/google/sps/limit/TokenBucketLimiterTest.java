@@ -0,0 +1,105 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.limit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class TokenBucketLimiterTest {
+  private static final long MILLI = 1_000_000;
+
+  // Far from 0, as nanoTime may be anything, negative included.
+  private final AtomicLong now = new AtomicLong(-5_000 * MILLI);
+
+  @Test
+  public void burstThenOneTokenPerInterval() {
+    TokenBucketLimiter limiter = limiter(2, 10);
+
+    Assert.assertEquals(0, limiter.tryAcquire("a"));
+    Assert.assertEquals(0, limiter.tryAcquire("a"));
+    Assert.assertEquals(1_000, limiter.tryAcquire("a"));
+
+    advance(400);
+    Assert.assertEquals(600, limiter.tryAcquire("a"));
+
+    advance(600);
+    Assert.assertEquals(0, limiter.tryAcquire("a"));
+    Assert.assertEquals(1_000, limiter.tryAcquire("a"));
+  }
+
+  @Test
+  public void idleBucketsDontBankMoreThanTheBurst() {
+    TokenBucketLimiter limiter = limiter(2, 10);
+    limiter.tryAcquire("a");
+
+    advance(60_000);
+    Assert.assertEquals(0, limiter.tryAcquire("a"));
+    Assert.assertEquals(0, limiter.tryAcquire("a"));
+    Assert.assertEquals(1_000, limiter.tryAcquire("a"));
+  }
+
+  @Test
+  public void keysHaveTheirOwnBuckets() {
+    TokenBucketLimiter limiter = limiter(1, 10);
+
+    Assert.assertEquals(0, limiter.tryAcquire("a"));
+    Assert.assertEquals(0, limiter.tryAcquire("b"));
+    Assert.assertEquals(1_000, limiter.tryAcquire("a"));
+    Assert.assertEquals(2, limiter.size());
+  }
+
+  @Test
+  public void fullBucketsAreEvictedFirst() {
+    TokenBucketLimiter limiter = limiter(2, 10);
+    for (int key = 0; key < 10; ++key) {
+      limiter.tryAcquire("key" + key);
+    }
+    Assert.assertEquals(10, limiter.size());
+
+    // Refilled, so the same as new ones.
+    advance(1_000);
+    limiter.tryAcquire("new");
+    Assert.assertEquals(1, limiter.size());
+  }
+
+  @Test
+  public void floodOfKeysStaysBounded() {
+    TokenBucketLimiter limiter = limiter(2, 10);
+    for (int key = 0; key < 10; ++key) {
+      limiter.tryAcquire("key" + key);
+    }
+
+    // None is full, so arbitrary ones go, down to a tenth below the bound.
+    Assert.assertEquals(0, limiter.tryAcquire("new"));
+    Assert.assertEquals(9, limiter.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void burstMustBePositive() {
+    new TokenBucketLimiter(0, 1_000, 10);
+  }
+
+  private TokenBucketLimiter limiter(final int burst, final int maxKeys) {
+    return new TokenBucketLimiter(burst, 1_000, maxKeys, now::get);
+  }
+
+  private void advance(final long millis) {
+    now.addAndGet(millis * MILLI);
+  }
+}
@@ -0,0 +1,99 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputed, per-attendee busy time. Building it costs one pass over all events, after which
+ * a query only touches the busy ranges of the people it asks about, however many events there
+ * are in total. Worth it when the same events answer a large batch of queries.
+ *
+ * New events can be added at any time, and only the busy time of their attendees is merged
+ * again.
+ */
+final class AttendeeFreeLists {
+  // Sorted and disjoint busy ranges of every attendee that has at least one event. The lists
+  // are replaced rather than modified, so read-only views of them stay consistent.
+  private final Map<String, List<TimeRange>> busyByAttendee = new HashMap<>();
+
+  AttendeeFreeLists(final Iterator<Event> events) {
+    add(events);
+  }
+
+  /**
+   * Adds the busy time of more events.
+   */
+  synchronized void add(final Iterator<Event> events) {
+    Map<String, List<TimeRange>> unmerged = new HashMap<>();
+
+    while (events.hasNext()) {
+      Event event = events.next();
+
+      for (String person : event.getAttendees()) {
+        List<TimeRange> busy = unmerged.get(person);
+        if (busy == null) {
+          busy = new ArrayList<>(busy(person));
+          unmerged.put(person, busy);
+        }
+        busy.add(event.getWhen());
+      }
+    }
+
+    for (Map.Entry<String, List<TimeRange>> entry : unmerged.entrySet()) {
+      busyByAttendee.put(entry.getKey(), FreeTimeTables.mergeBusy(entry.getValue()));
+    }
+  }
+
+  /**
+   * Builds both free timetables, for the mandatory attendees only, and for the mandatory and
+   * optional attendees together.
+   */
+  synchronized TimeTablePair timeTables(final Collection<String> mandatoryAttendees,
+                                        final Collection<String> optionalAttendees) {
+    List<TimeRange> busy = FreeTimeTables.mergeBusy(collect(mandatoryAttendees));
+
+    List<TimeRange> optionalBusy = collect(optionalAttendees);
+    optionalBusy.addAll(busy);
+    optionalBusy = FreeTimeTables.mergeBusy(optionalBusy);
+
+    return new TimeTablePair(FreeTimeTables.complement(busy),
+                             FreeTimeTables.complement(optionalBusy));
+  }
+
+  /**
+   * Returns the sorted and disjoint busy ranges of one attendee, read-only.
+   */
+  synchronized List<TimeRange> busy(final String attendee) {
+    List<TimeRange> busy = busyByAttendee.get(attendee);
+    return busy == null ? Collections.<TimeRange>emptyList() : Collections.unmodifiableList(busy);
+  }
+
+  private List<TimeRange> collect(final Collection<String> people) {
+    List<TimeRange> ranges = new ArrayList<>();
+
+    for (String person : people) {
+      ranges.addAll(busy(person));
+    }
+
+    return ranges;
+  }
+}
@@ -0,0 +1,65 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+
+/**
+ * Busy bitmaps over a horizon of several days, one bit per minute, as laid out by
+ * {@link MappedAvailabilityStore}. Every day starts on a fresh {@code long}, so days can be
+ * sliced out of a mask without shifting bits.
+ */
+public final class BusyMasks {
+  // 1440 minutes rounded up to whole longs.
+  public static final int WORDS_PER_DAY = (TimeRange.WHOLE_DAY.duration() + 63) / 64;
+
+  private BusyMasks() {
+    // Disallow instances.
+  }
+
+  /**
+   * Marks {@code when} as busy on the given day of the mask.
+   */
+  public static void markBusy(long[] mask, int day, TimeRange when) {
+    checkDay(mask, day);
+
+    int start = Math.max(when.start(), TimeRange.WHOLE_DAY.start());
+    int end = Math.min(when.end(), TimeRange.WHOLE_DAY.end());
+    if (start >= end) {
+      return;
+    }
+
+    int dayBit = day * WORDS_PER_DAY * 64;
+    int firstWord = (dayBit + start) >>> 6;
+    int lastWord = (dayBit + end - 1) >>> 6;
+    // Shifts only use the low 6 bits of their distance, as in {@code BitSet.set}.
+    long firstMask = -1L << (dayBit + start);
+    long lastMask = -1L >>> -(dayBit + end);
+
+    if (firstWord == lastWord) {
+      mask[firstWord] |= firstMask & lastMask;
+    } else {
+      mask[firstWord] |= firstMask;
+      Arrays.fill(mask, firstWord + 1, lastWord, -1L);
+      mask[lastWord] |= lastMask;
+    }
+  }
+
+  private static void checkDay(final long[] mask, final int day) {
+    if (day < 0 || (day + 1) * WORDS_PER_DAY > mask.length) {
+      throw new IllegalArgumentException("The day is outside of the mask's horizon");
+    }
+  }
+}
@@ -0,0 +1,93 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+/**
+ * Command line entry point for bulk calendar imports.
+ *
+ * Usage: CalendarImportTool <csv|ics> <file> [server-url]
+ *
+ * Without a server URL, the file is parsed locally and the number of events is reported, which
+ * validates an export before onboarding. With one, e.g. "http://localhost:8080", the file is
+ * streamed as-is to the server's /import endpoint, which does the parsing.
+ */
+public final class CalendarImportTool {
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private CalendarImportTool() {
+    // Disallow instances.
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2 || args.length > 3) {
+      System.err.println("Usage: CalendarImportTool <csv|ics> <file> [server-url]");
+      System.exit(2);
+    }
+
+    EventImporter.Format format = EventImporter.Format.fromName(args[0]);
+    Path path = Paths.get(args[1]);
+    long startNanos = System.nanoTime();
+
+    if (args.length == 2) {
+      EventStore store = new EventStore(Collections.<Event>emptyList());
+      long imported = EventImporter.importFile(path, format, store);
+
+      System.out.printf("Parsed %d events in %d ms%n", imported,
+                        (System.nanoTime() - startNanos) / 1_000_000);
+      return;
+    }
+
+    URL url = new URL(args[2] + "/import?format=" + URLEncoder.encode(args[0], "UTF-8"));
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setRequestMethod("POST");
+    connection.setRequestProperty("Content-Type", "text/plain; charset=UTF-8");
+    connection.setDoOutput(true);
+    // Stream the body in chunks instead of buffering the whole file to compute its length.
+    connection.setChunkedStreamingMode(CHUNK_SIZE);
+
+    try (OutputStream body = connection.getOutputStream()) {
+      Files.copy(path, body);
+    }
+
+    int status = connection.getResponseCode();
+    try (InputStream reply = status < 400 ? connection.getInputStream() :
+                                            connection.getErrorStream()) {
+      System.out.printf("Server answered %d in %d ms%n", status,
+                        (System.nanoTime() - startNanos) / 1_000_000);
+      if (reply != null) {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        for (int read = reply.read(buffer); read >= 0; read = reply.read(buffer)) {
+          System.out.write(buffer, 0, read);
+        }
+        System.out.flush();
+      }
+    }
+
+    if (status >= 400) {
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,44 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One partition of the calendar, owning the busy time of a subset of the attendees.
+ * Every call is asynchronous and coarse-grained, taking and returning plain values, so a shard
+ * can live in the same JVM or behind a process boundary.
+ */
+public interface CalendarShard extends AutoCloseable {
+  /**
+   * Adds a batch of events. Only the attendees this shard owns are indexed; the others are the
+   * business of the other shards the event was sent to.
+   */
+  CompletableFuture<Void> addAll(Collection<Event> events);
+
+  /**
+   * Returns the union of the busy time of the given attendees, all owned by this shard, as
+   * sorted and disjoint ranges.
+   */
+  CompletableFuture<List<TimeRange>> busyUnion(Collection<String> attendees);
+
+  /**
+   * Releases the resources of the shard. Pending calls may or may not complete.
+   */
+  @Override
+  void close();
+}
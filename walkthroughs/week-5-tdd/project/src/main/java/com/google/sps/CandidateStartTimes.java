@@ -0,0 +1,100 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Lazily walks a timetable of free slots and yields every start time, aligned to a fixed
+ * granularity, at which a meeting of the given duration fits. Nothing is computed ahead of
+ * the caller, so stopping after the first few candidates costs only those candidates.
+ */
+final class CandidateStartTimes implements PrimitiveIterator.OfInt {
+  private final List<TimeRange> freeSlots;
+  private final int duration;
+  private final int granularity;
+
+  private int slotIdx;
+  private int candidate;
+
+  /**
+   * @param freeSlots the free slots, sorted by start time and non-overlapping. Cannot be null.
+   * @param duration the duration of the meeting, in minutes.
+   * @param granularity the distance between two consecutive start times, in minutes. Start times
+   *    are multiples of it, counting from the start of the day.
+   * @param from no start time earlier than this minute is returned. Used to resume a
+   *    previous enumeration.
+   * @throws IllegalArgumentException if the granularity is not positive.
+   */
+  CandidateStartTimes(final List<TimeRange> freeSlots, final long duration,
+                      final int granularity, final int from) throws IllegalArgumentException {
+    if (granularity <= 0) {
+      throw new IllegalArgumentException("The granularity must be a positive number of minutes");
+    }
+
+    this.freeSlots = freeSlots;
+    this.duration = (int) Math.min(duration, Integer.MAX_VALUE);
+    this.granularity = granularity;
+
+    slotIdx = freeSlots.isEmpty() ? 0 :
+              TimeRange.lowerBound(freeSlots, TimeRange.fromStartDuration(from, 0));
+    candidate = alignUp(from);
+    advance();
+  }
+
+  @Override
+  public boolean hasNext() {
+    return slotIdx < freeSlots.size();
+  }
+
+  @Override
+  public int nextInt() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    int result = candidate;
+    candidate += granularity;
+    advance();
+
+    return result;
+  }
+
+  /**
+   * Moves {@code candidate} to the first aligned start time >= itself that fits inside a free
+   * slot, skipping every slot that is too short. Leaves {@code slotIdx} past the end of the
+   * timetable when there is no such start time.
+   */
+  private void advance() {
+    for (; slotIdx < freeSlots.size(); ++slotIdx) {
+      TimeRange slot = freeSlots.get(slotIdx);
+
+      if (candidate < slot.start()) {
+        candidate = alignUp(slot.start());
+      }
+
+      // A zero-length meeting still needs to start inside the slot.
+      if (candidate < slot.end() && (long) candidate + duration <= slot.end()) {
+        return;
+      }
+    }
+  }
+
+  private int alignUp(final int minute) {
+    return Math.max(0, (minute + granularity - 1) / granularity * granularity);
+  }
+}
@@ -0,0 +1,337 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The busy time of one attendee, or a group of them, over a long horizon such as a year.
+ * Minutes are counted from the start of the horizon and busy time is stored run-length
+ * encoded, as sorted and disjoint [start, end) runs. Free nights and weekends cost nothing, so
+ * a typical year takes a few kilobytes instead of the 64 KB of a minute bitmap.
+ *
+ * Sets are immutable. Union, intersection and first-fit searches work on the runs directly,
+ * without ever expanding them.
+ */
+public final class CompressedBusySet {
+  public static final int MINUTES_PER_DAY = TimeRange.WHOLE_DAY.duration();
+
+  public static final CompressedBusySet EMPTY = new CompressedBusySet(new int[0], 0);
+
+  // Run i spans [runs[2 * i], runs[2 * i + 1]). Runs are sorted, disjoint and never touch.
+  private final int[] runs;
+  private final int runCount;
+
+  /**
+   * Takes over {@code runs}, trimmed to its first {@code runCount} runs, since union,
+   * intersection and build size it for the worst case.
+   */
+  private CompressedBusySet(final int[] runs, final int runCount) {
+    this.runs = runs.length == 2 * runCount ? runs : Arrays.copyOf(runs, 2 * runCount);
+    this.runCount = runCount;
+  }
+
+  /**
+   * Collects busy ranges in any order, and merges them into a set.
+   */
+  public static final class Builder {
+    private int[] ranges = new int[16];
+    private int size;
+
+    /**
+     * Marks {@code when} of the given day, counted from 0, as busy.
+     */
+    public Builder add(int day, TimeRange when) {
+      if (day < 0) {
+        throw new IllegalArgumentException("The day cannot be before the start of the horizon");
+      }
+
+      int start = Math.max(when.start(), TimeRange.WHOLE_DAY.start());
+      int end = Math.min(when.end(), TimeRange.WHOLE_DAY.end());
+      return start < end ? add(day * MINUTES_PER_DAY + start, day * MINUTES_PER_DAY + end) : this;
+    }
+
+    /**
+     * Marks the minutes [start, end) of the horizon as busy.
+     */
+    public Builder add(int start, int end) {
+      if (start < 0 || end < start) {
+        throw new IllegalArgumentException("Invalid busy range");
+      }
+
+      if (start == end) {
+        return this;
+      }
+
+      if (size + 2 > ranges.length) {
+        ranges = Arrays.copyOf(ranges, ranges.length * 2);
+      }
+      ranges[size++] = start;
+      ranges[size++] = end;
+
+      return this;
+    }
+
+    public CompressedBusySet build() {
+      // Sort the ranges by start, packing each one in a long so the sort needs no comparator.
+      long[] packed = new long[size / 2];
+      for (int i = 0; i < packed.length; ++i) {
+        packed[i] = ((long) ranges[2 * i] << 32) | ranges[2 * i + 1];
+      }
+      Arrays.sort(packed);
+
+      int[] merged = new int[size];
+      int runCount = 0;
+      for (long range : packed) {
+        int start = (int) (range >>> 32);
+        int end = (int) range;
+        runCount = appendRun(merged, runCount, start, end);
+      }
+
+      return new CompressedBusySet(merged, runCount);
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns the union of many sets, merging them pairwise so every run is copied only a
+   * logarithmic number of times.
+   */
+  public static CompressedBusySet unionAll(Collection<CompressedBusySet> sets) {
+    List<CompressedBusySet> level = new ArrayList<>(sets);
+
+    while (level.size() > 1) {
+      List<CompressedBusySet> next = new ArrayList<>((level.size() + 1) / 2);
+
+      for (int i = 0; i + 1 < level.size(); i += 2) {
+        next.add(level.get(i).union(level.get(i + 1)));
+      }
+      if (level.size() % 2 == 1) {
+        next.add(level.get(level.size() - 1));
+      }
+
+      level = next;
+    }
+
+    return level.isEmpty() ? EMPTY : level.get(0);
+  }
+
+  /**
+   * Returns the minutes busy in this set, in {@code other}, or in both.
+   */
+  public CompressedBusySet union(CompressedBusySet other) {
+    int[] merged = new int[2 * (runCount + other.runCount)];
+    int count = 0;
+    int i = 0;
+    int j = 0;
+
+    while (i < runCount || j < other.runCount) {
+      boolean fromThis = j == other.runCount ||
+                         (i < runCount && runs[2 * i] <= other.runs[2 * j]);
+
+      if (fromThis) {
+        count = appendRun(merged, count, runs[2 * i], runs[2 * i + 1]);
+        ++i;
+      } else {
+        count = appendRun(merged, count, other.runs[2 * j], other.runs[2 * j + 1]);
+        ++j;
+      }
+    }
+
+    return new CompressedBusySet(merged, count);
+  }
+
+  /**
+   * Returns the minutes busy in both this set and {@code other}.
+   */
+  public CompressedBusySet intersection(CompressedBusySet other) {
+    int[] result = new int[2 * (runCount + other.runCount)];
+    int count = 0;
+    int i = 0;
+    int j = 0;
+
+    while (i < runCount && j < other.runCount) {
+      int start = Math.max(runs[2 * i], other.runs[2 * j]);
+      int end = Math.min(runs[2 * i + 1], other.runs[2 * j + 1]);
+
+      if (start < end) {
+        result[2 * count] = start;
+        result[2 * count + 1] = end;
+        ++count;
+      }
+
+      // Drop whichever run ends first; the other one may still overlap the next run.
+      if (runs[2 * i + 1] < other.runs[2 * j + 1]) {
+        ++i;
+      } else {
+        ++j;
+      }
+    }
+
+    return new CompressedBusySet(result, count);
+  }
+
+  /**
+   * Finds the earliest free run of at least {@code duration} minutes.
+   *
+   * @param from the first minute of the horizon to consider.
+   * @param duration the length of the free run, in minutes.
+   * @param horizonEnd the exclusive end of the horizon; the run must end at or before it.
+   * @return the first minute of the run, or -1 if there is none.
+   */
+  public int firstFreeRun(int from, int duration, int horizonEnd) {
+    int candidate = Math.max(from, 0);
+
+    // Skip, with a binary search, every run that ends before the candidate.
+    for (int run = firstRunEndingAfter(candidate); ; ++run) {
+      int nextBusy = run < runCount ? Math.min(runs[2 * run], horizonEnd) : horizonEnd;
+
+      if ((long) candidate + duration <= nextBusy) {
+        return candidate;
+      }
+
+      if (run >= runCount || runs[2 * run] >= horizonEnd) {
+        return -1;
+      }
+
+      candidate = Math.max(candidate, runs[2 * run + 1]);
+    }
+  }
+
+  /**
+   * Checks if the given minute of the horizon is busy.
+   */
+  public boolean isBusy(int minute) {
+    int run = firstRunEndingAfter(minute);
+    return run < runCount && runs[2 * run] <= minute;
+  }
+
+  /**
+   * Returns the free slots of one day, counted from 0, as {@code TimeRange}s of that day.
+   */
+  public List<TimeRange> freeSlots(int day) {
+    int dayStart = day * MINUTES_PER_DAY;
+    int dayEnd = dayStart + MINUTES_PER_DAY;
+    List<TimeRange> timeTable = new ArrayList<>();
+    int freeFrom = dayStart;
+
+    for (int run = firstRunEndingAfter(dayStart); run < runCount && runs[2 * run] < dayEnd;
+         ++run) {
+      if (runs[2 * run] > freeFrom) {
+        timeTable.add(TimeRange.fromStartEnd(freeFrom - dayStart, runs[2 * run] - dayStart, false));
+      }
+      freeFrom = runs[2 * run + 1];
+    }
+
+    if (freeFrom < dayEnd) {
+      timeTable.add(TimeRange.fromStartEnd(freeFrom - dayStart, MINUTES_PER_DAY, false));
+    }
+
+    return timeTable;
+  }
+
+  /**
+   * Returns the number of busy minutes.
+   */
+  public long busyMinutes() {
+    long total = 0;
+
+    for (int run = 0; run < runCount; ++run) {
+      total += runs[2 * run + 1] - runs[2 * run];
+    }
+
+    return total;
+  }
+
+  /**
+   * Returns the number of runs, which is what the memory footprint is proportional to.
+   */
+  public int runCount() {
+    return runCount;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof CompressedBusySet && equals(this, (CompressedBusySet) other);
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = runCount;
+
+    for (int i = 0; i < 2 * runCount; ++i) {
+      hash = 31 * hash + runs[i];
+    }
+
+    return hash;
+  }
+
+  private static boolean equals(CompressedBusySet a, CompressedBusySet b) {
+    if (a.runCount != b.runCount) {
+      return false;
+    }
+
+    for (int i = 0; i < 2 * a.runCount; ++i) {
+      if (a.runs[i] != b.runs[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns the index of the first run whose end is after {@code minute}, or the number of runs
+   * if there is none.
+   */
+  private int firstRunEndingAfter(final int minute) {
+    int low = 0;
+    int high = runCount;
+
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+
+      if (runs[2 * middle + 1] <= minute) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    return low;
+  }
+
+  /**
+   * Appends [start, end) to runs sorted by start, merging it with the last run if they overlap
+   * or touch. Returns the new number of runs.
+   */
+  private static int appendRun(final int[] runs, final int runCount, final int start,
+                               final int end) {
+    if (runCount > 0 && runs[2 * runCount - 1] >= start) {
+      runs[2 * runCount - 1] = Math.max(runs[2 * runCount - 1], end);
+      return runCount;
+    }
+
+    runs[2 * runCount] = start;
+    runs[2 * runCount + 1] = end;
+    return runCount + 1;
+  }
+}
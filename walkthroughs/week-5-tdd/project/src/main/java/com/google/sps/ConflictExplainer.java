@@ -0,0 +1,189 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Builds a {@code ConflictExplanation} with a single sweep over the events of the mandatory
+ * attendees. The day is cut into elementary intervals at every event boundary, each one knowing
+ * which attendees are busy during it. A window as long as the meeting is then slid over the day,
+ * stopping only where the set of intervals it covers changes.
+ */
+final class ConflictExplainer {
+  // Near misses with more conflicting attendees than this are not worth suggesting.
+  static final int MAX_CONFLICTS = 2;
+  static final int MAX_NEAR_MISSES = 5;
+
+  private static final Comparator<ConflictExplanation.NearMiss> ORDER_BY_CONFLICTS =
+      new Comparator<ConflictExplanation.NearMiss>() {
+    @Override
+    public int compare(ConflictExplanation.NearMiss a, ConflictExplanation.NearMiss b) {
+      int bySize = Integer.compare(a.getConflictingAttendees().size(),
+                                   b.getConflictingAttendees().size());
+      return bySize != 0 ? bySize : TimeRange.ORDER_BY_START.compare(a.getWhen(), b.getWhen());
+    }
+  };
+
+  private ConflictExplainer() {
+    // Disallow instances.
+  }
+
+  /**
+   * @param events an iterator over all scheduled events, consumed in a single pass. Cannot be
+   *    null.
+   * @param mandatoryAttendees the mandatory attendees of the meeting. Cannot be null.
+   * @param duration the duration of the meeting, in minutes.
+   */
+  static ConflictExplanation explain(final Iterator<Event> events,
+                                     final Collection<String> mandatoryAttendees,
+                                     final long duration) {
+    if (duration > TimeRange.WHOLE_DAY.duration()) {
+      return new ConflictExplanation(Collections.<String>emptySet(),
+                                     Collections.<ConflictExplanation.NearMiss>emptyList());
+    }
+
+    // For every boundary, the attendees that become busy (+1) or free (-1) at that minute.
+    TreeMap<Integer, Map<String, Integer>> deltas = new TreeMap<>();
+    deltas.put(TimeRange.WHOLE_DAY.start(), new HashMap<String, Integer>());
+    deltas.put(TimeRange.WHOLE_DAY.end(), new HashMap<String, Integer>());
+
+    while (events.hasNext()) {
+      Event event = events.next();
+      List<String> busy = new ArrayList<>();
+      for (String person : event.getAttendees()) {
+        if (mandatoryAttendees.contains(person)) {
+          busy.add(person);
+        }
+      }
+
+      int start = Math.max(event.getWhen().start(), TimeRange.WHOLE_DAY.start());
+      int end = Math.min(event.getWhen().end(), TimeRange.WHOLE_DAY.end());
+      if (busy.isEmpty() || start >= end) {
+        continue;
+      }
+
+      for (String person : busy) {
+        addDelta(deltas, start, person, 1);
+        addDelta(deltas, end, person, -1);
+      }
+    }
+
+    List<Integer> boundaries = new ArrayList<>(deltas.keySet());
+    List<Set<String>> busyDuring = new ArrayList<>();
+    Map<String, Integer> active = new HashMap<>();
+
+    for (Map<String, Integer> delta : deltas.values()) {
+      for (Map.Entry<String, Integer> change : delta.entrySet()) {
+        int count = active.getOrDefault(change.getKey(), 0) + change.getValue();
+        if (count == 0) {
+          active.remove(change.getKey());
+        } else {
+          active.put(change.getKey(), count);
+        }
+      }
+      busyDuring.add(new HashSet<>(active.keySet()));
+    }
+
+    // A zero-length meeting still conflicts with whoever is busy at its start.
+    int window = (int) Math.max(duration, 1);
+    int lastStart = TimeRange.WHOLE_DAY.end() - window;
+
+    // The set of intervals a window covers only changes when its start crosses a boundary, or
+    // when its end does, so windows starting between two change points share their conflicts.
+    TreeSet<Integer> changePoints = new TreeSet<>();
+    for (int boundary : boundaries) {
+      for (int point : new int[] {boundary, boundary - window + 1}) {
+        if (point >= TimeRange.WHOLE_DAY.start() && point <= lastStart) {
+          changePoints.add(point);
+        }
+      }
+    }
+    changePoints.add(TimeRange.WHOLE_DAY.start());
+    changePoints.add(lastStart + 1);
+
+    Set<String> smallestBlocking = null;
+    List<ConflictExplanation.NearMiss> nearMisses = new ArrayList<>();
+    Set<String> runConflicts = null;
+    int runStart = 0;
+    int firstInterval = 0;
+
+    for (int windowStart : changePoints) {
+      if (windowStart > lastStart) {
+        addNearMiss(nearMisses, runConflicts, runStart, windowStart - 1 + window);
+        break;
+      }
+
+      while (boundaries.get(firstInterval + 1) <= windowStart) {
+        ++firstInterval;
+      }
+
+      Set<String> conflicts = new HashSet<>();
+      for (int j = firstInterval; j + 1 < boundaries.size() &&
+                                  boundaries.get(j) < windowStart + window; ++j) {
+        conflicts.addAll(busyDuring.get(j));
+      }
+
+      if (smallestBlocking == null || conflicts.size() < smallestBlocking.size()) {
+        smallestBlocking = conflicts;
+      }
+
+      // Consecutive windows blocked by the same people are reported as one range.
+      if (!conflicts.equals(runConflicts)) {
+        addNearMiss(nearMisses, runConflicts, runStart, windowStart - 1 + window);
+        runConflicts = conflicts;
+        runStart = windowStart;
+      }
+    }
+
+    Collections.sort(nearMisses, ORDER_BY_CONFLICTS);
+
+    return new ConflictExplanation(
+        smallestBlocking == null ? Collections.<String>emptySet() : smallestBlocking,
+        nearMisses.subList(0, Math.min(nearMisses.size(), MAX_NEAR_MISSES)));
+  }
+
+  private static void addDelta(final TreeMap<Integer, Map<String, Integer>> deltas,
+                               final int minute, final String person, final int change) {
+    Map<String, Integer> delta = deltas.get(minute);
+    if (delta == null) {
+      delta = new HashMap<>();
+      deltas.put(minute, delta);
+    }
+
+    delta.put(person, delta.getOrDefault(person, 0) + change);
+  }
+
+  private static void addNearMiss(final List<ConflictExplanation.NearMiss> nearMisses,
+                                  final Set<String> conflicts, final int start, final int end) {
+    if (conflicts == null || conflicts.isEmpty() || conflicts.size() > MAX_CONFLICTS) {
+      return;
+    }
+
+    nearMisses.add(new ConflictExplanation.NearMiss(TimeRange.fromStartEnd(start, end, false),
+                                                    conflicts));
+  }
+}
@@ -0,0 +1,99 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Explains why a meeting request has no available time slots: the smallest set of mandatory
+ * attendees that has to be dropped for the meeting to fit, and the slots where only a few
+ * mandatory attendees are busy. Explanations are considered read-only.
+ */
+public final class ConflictExplanation {
+  private final Set<String> blockingAttendees = new TreeSet<>();
+  private final List<NearMiss> nearMisses = new ArrayList<>();
+
+  ConflictExplanation(final Collection<String> blockingAttendees,
+                      final Collection<NearMiss> nearMisses) {
+    this.blockingAttendees.addAll(blockingAttendees);
+    this.nearMisses.addAll(nearMisses);
+  }
+
+  /**
+   * Returns a read-only, smallest set of mandatory attendees whose removal from the request
+   * makes at least one time slot available. Empty if the meeting can't fit even without any
+   * attendees, e.g. because it is longer than a day.
+   */
+  public Set<String> getBlockingAttendees() {
+    return Collections.unmodifiableSet(blockingAttendees);
+  }
+
+  /**
+   * Returns a read-only list of the slots where the meeting fits if only a few mandatory
+   * attendees are dropped, the ones with the fewest conflicts first.
+   */
+  public List<NearMiss> getNearMisses() {
+    return Collections.unmodifiableList(nearMisses);
+  }
+
+  /**
+   * A time range in which the meeting can start and still fit, if the conflicting attendees
+   * are left out.
+   */
+  public static final class NearMiss {
+    private final TimeRange when;
+    private final Set<String> conflictingAttendees = new TreeSet<>();
+
+    NearMiss(final TimeRange when, final Collection<String> conflictingAttendees) {
+      this.when = when;
+      this.conflictingAttendees.addAll(conflictingAttendees);
+    }
+
+    /**
+     * Returns the {@code TimeRange} in which the meeting fits.
+     */
+    public TimeRange getWhen() {
+      return when;
+    }
+
+    /**
+     * Returns a read-only set of the mandatory attendees that are busy during this slot.
+     */
+    public Set<String> getConflictingAttendees() {
+      return Collections.unmodifiableSet(conflictingAttendees);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof NearMiss && when.equals(((NearMiss) other).when) &&
+             conflictingAttendees.equals(((NearMiss) other).conflictingAttendees);
+    }
+
+    @Override
+    public int hashCode() {
+      return when.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return when + " without " + conflictingAttendees;
+    }
+  }
+}
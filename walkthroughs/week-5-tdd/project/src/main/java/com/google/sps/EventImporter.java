@@ -0,0 +1,412 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stream-parses calendar exports into {@code Event}s and hands them to an {@code EventStore} in
+ * batches. The input is read one line at a time, so only the current batch is ever held in
+ * memory, never the whole file.
+ *
+ * Supported formats:
+ * 1. CSV, one event per line: title,start,end,attendees. Times are "HH:mm", "24:00" being the
+ *    end of the day, and attendees are separated by ';'. Fields may be double-quoted. A first
+ *    line starting with "title," is treated as a header.
+ * 2. iCalendar, using the SUMMARY, DTSTART, DTEND and ATTENDEE properties of every VEVENT.
+ *    Only the time of day is kept; an event ending on a later date ends with the day.
+ */
+public final class EventImporter {
+  public static final int DEFAULT_BATCH_SIZE = 4096;
+
+  /**
+   * The formats that can be imported.
+   */
+  public enum Format {
+    CSV,
+    ICALENDAR;
+
+    /**
+     * Returns the format for a name such as "csv" or "ics", case insensitive.
+     *
+     * @throws IllegalArgumentException if the name is not a known format.
+     */
+    public static Format fromName(final String name) throws IllegalArgumentException {
+      if ("csv".equalsIgnoreCase(name)) {
+        return CSV;
+      } else if ("ics".equalsIgnoreCase(name) || "icalendar".equalsIgnoreCase(name)) {
+        return ICALENDAR;
+      }
+
+      throw new IllegalArgumentException("Unknown calendar format: " + name);
+    }
+  }
+
+  private EventImporter() {
+    // Disallow instances.
+  }
+
+  /**
+   * Imports a calendar file, reading it through a buffered NIO reader.
+   *
+   * @return the number of imported events.
+   * @throws IllegalArgumentException if the file is malformed. The batches before the malformed
+   *    record are already in the store.
+   */
+  public static long importFile(final Path path, final Format format, final EventStore store)
+                                throws IOException, IllegalArgumentException {
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      return importEvents(reader, format, store, DEFAULT_BATCH_SIZE);
+    }
+  }
+
+  /**
+   * Imports all the events that can be read from {@code reader}, handing them to {@code store}
+   * every {@code batchSize} events. The reader is not closed.
+   *
+   * @return the number of imported events.
+   * @throws IllegalArgumentException if the input is malformed, or if the batch size is not
+   *    positive. The batches before the malformed record are already in the store.
+   */
+  public static long importEvents(final BufferedReader reader, final Format format,
+                                  final EventStore store, final int batchSize)
+                                  throws IOException, IllegalArgumentException {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("The batch size must be positive");
+    }
+
+    EventParser parser =
+        format == Format.CSV ? new CsvParser(reader) : new ICalendarParser(reader);
+    List<Event> batch = new ArrayList<>(batchSize);
+    long imported = 0;
+
+    for (Event event = parser.next(); event != null; event = parser.next()) {
+      batch.add(event);
+
+      if (batch.size() == batchSize) {
+        store.addAll(batch);
+        imported += batch.size();
+        batch = new ArrayList<>(batchSize);
+      }
+    }
+
+    store.addAll(batch);
+    return imported + batch.size();
+  }
+
+  /**
+   * Parses "HH:mm" into minutes since the start of the day, "24:00" being the end of the day.
+   */
+  private static int parseTime(final String time, final int lineNumber) {
+    int colon = time.indexOf(':');
+    try {
+      int hours = Integer.parseInt(time.substring(0, colon).trim());
+      int minutes = Integer.parseInt(time.substring(colon + 1).trim());
+
+      if (hours == 24 && minutes == 0) {
+        return TimeRange.WHOLE_DAY.end();
+      }
+
+      return TimeRange.getTimeInMinutes(hours, minutes);
+    } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+      throw malformed(lineNumber, "invalid time \"" + time + "\"");
+    }
+  }
+
+  private static Event createEvent(final String title, final int start, final int end,
+                                   final List<String> attendees, final int lineNumber) {
+    if (end < start) {
+      throw malformed(lineNumber, "event ends before it starts");
+    }
+
+    return new Event(title, TimeRange.fromStartEnd(start, end, false), attendees);
+  }
+
+  private static IllegalArgumentException malformed(final int lineNumber, final String reason) {
+    return new IllegalArgumentException("Malformed calendar at line " + lineNumber + ": " + reason);
+  }
+
+  /**
+   * Pulls one event at a time out of a reader.
+   */
+  private abstract static class EventParser {
+    protected final BufferedReader reader;
+    protected int lineNumber;
+
+    EventParser(final BufferedReader reader) {
+      this.reader = reader;
+    }
+
+    /**
+     * Returns the next event, or null when the input is over.
+     */
+    abstract Event next() throws IOException;
+  }
+
+  private static final class CsvParser extends EventParser {
+    private static final int FIELD_COUNT = 4;
+
+    CsvParser(final BufferedReader reader) {
+      super(reader);
+    }
+
+    @Override
+    Event next() throws IOException {
+      String line;
+
+      while ((line = reader.readLine()) != null) {
+        ++lineNumber;
+
+        if (line.trim().isEmpty() || (lineNumber == 1 && line.startsWith("title,"))) {
+          continue;
+        }
+
+        List<String> fields = splitLine(line);
+        if (fields.size() != FIELD_COUNT) {
+          throw malformed(lineNumber, "expected " + FIELD_COUNT + " fields");
+        }
+
+        List<String> attendees = new ArrayList<>();
+        String attendeeList = fields.get(3);
+        for (int from = 0; from < attendeeList.length(); ) {
+          int to = attendeeList.indexOf(';', from);
+          to = to < 0 ? attendeeList.length() : to;
+
+          String attendee = attendeeList.substring(from, to).trim();
+          if (!attendee.isEmpty()) {
+            attendees.add(attendee);
+          }
+          from = to + 1;
+        }
+
+        return createEvent(fields.get(0), parseTime(fields.get(1), lineNumber),
+                           parseTime(fields.get(2), lineNumber), attendees, lineNumber);
+      }
+
+      return null;
+    }
+
+    /**
+     * Splits a line on commas, honouring double-quoted fields and "" escapes inside them.
+     */
+    private List<String> splitLine(final String line) {
+      List<String> fields = new ArrayList<>(FIELD_COUNT);
+      StringBuilder field = new StringBuilder();
+      boolean quoted = false;
+
+      for (int i = 0; i < line.length(); ++i) {
+        char c = line.charAt(i);
+
+        if (quoted) {
+          if (c != '"') {
+            field.append(c);
+          } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+            field.append('"');
+            ++i;
+          } else {
+            quoted = false;
+          }
+        } else if (c == '"') {
+          quoted = true;
+        } else if (c == ',') {
+          fields.add(field.toString());
+          field.setLength(0);
+        } else {
+          field.append(c);
+        }
+      }
+
+      if (quoted) {
+        throw malformed(lineNumber, "unterminated quoted field");
+      }
+
+      fields.add(field.toString());
+      return fields;
+    }
+  }
+
+  private static final class ICalendarParser extends EventParser {
+    // The next physical line, read ahead to detect folded continuation lines.
+    private String lookahead;
+
+    ICalendarParser(final BufferedReader reader) throws IOException {
+      super(reader);
+      lookahead = reader.readLine();
+    }
+
+    @Override
+    Event next() throws IOException {
+      boolean inEvent = false;
+      String title = "";
+      String startDate = null;
+      String endDate = null;
+      int start = -1;
+      int end = -1;
+      List<String> attendees = new ArrayList<>();
+
+      for (String line = nextLogicalLine(); line != null; line = nextLogicalLine()) {
+        if (line.equals("BEGIN:VEVENT")) {
+          inEvent = true;
+          continue;
+        } else if (!inEvent) {
+          continue;
+        } else if (line.equals("END:VEVENT")) {
+          if (start < 0 || end < 0) {
+            throw malformed(lineNumber, "VEVENT without DTSTART or DTEND");
+          }
+
+          // Only the time of day is kept, so anything past the start date ends with the day.
+          if (!startDate.equals(endDate)) {
+            end = TimeRange.WHOLE_DAY.end();
+          }
+
+          return createEvent(title, start, end, attendees, lineNumber);
+        }
+
+        int valueIdx = valueStart(line);
+        if (valueIdx < 0) {
+          continue;
+        }
+
+        String name = propertyName(line, valueIdx);
+        String value = line.substring(valueIdx + 1);
+
+        if (name.equals("SUMMARY")) {
+          title = unescape(value);
+        } else if (name.equals("DTSTART")) {
+          startDate = value.substring(0, Math.min(value.length(), 8));
+          start = parseDateTime(value);
+        } else if (name.equals("DTEND")) {
+          endDate = value.substring(0, Math.min(value.length(), 8));
+          end = parseDateTime(value);
+        } else if (name.equals("ATTENDEE")) {
+          String commonName = parameter(line.substring(0, valueIdx), "CN");
+          String attendee = commonName != null ? commonName :
+                            value.regionMatches(true, 0, "mailto:", 0, 7) ? value.substring(7) :
+                            value;
+          attendees.add(attendee);
+        }
+      }
+
+      if (inEvent) {
+        throw malformed(lineNumber, "VEVENT is not closed");
+      }
+
+      return null;
+    }
+
+    /**
+     * Returns the next line, with any folded continuation lines appended to it.
+     */
+    private String nextLogicalLine() throws IOException {
+      if (lookahead == null) {
+        return null;
+      }
+
+      StringBuilder line = new StringBuilder(lookahead);
+      ++lineNumber;
+
+      for (lookahead = reader.readLine();
+           lookahead != null && !lookahead.isEmpty() &&
+               (lookahead.charAt(0) == ' ' || lookahead.charAt(0) == '\t');
+           lookahead = reader.readLine()) {
+        line.append(lookahead, 1, lookahead.length());
+        ++lineNumber;
+      }
+
+      return line.toString();
+    }
+
+    /**
+     * Returns the index of the ':' separating the name and parameters from the value, ignoring
+     * the ones inside quoted parameter values.
+     */
+    private int valueStart(final String line) {
+      boolean quoted = false;
+
+      for (int i = 0; i < line.length(); ++i) {
+        char c = line.charAt(i);
+
+        if (c == '"') {
+          quoted = !quoted;
+        } else if (c == ':' && !quoted) {
+          return i;
+        }
+      }
+
+      return -1;
+    }
+
+    private String propertyName(final String line, final int valueIdx) {
+      int paramIdx = line.indexOf(';');
+      return line.substring(0, paramIdx >= 0 && paramIdx < valueIdx ? paramIdx : valueIdx)
+                 .toUpperCase();
+    }
+
+    private String parameter(final String nameAndParams, final String parameter) {
+      for (String param : nameAndParams.split(";")) {
+        int equals = param.indexOf('=');
+
+        if (equals > 0 && param.substring(0, equals).equalsIgnoreCase(parameter)) {
+          String value = param.substring(equals + 1);
+          return value.startsWith("\"") && value.endsWith("\"") && value.length() >= 2 ?
+                 value.substring(1, value.length() - 1) : value;
+        }
+      }
+
+      return null;
+    }
+
+    /**
+     * Parses the time of day of a DATE-TIME value, e.g. "20200101T083000Z". DATE values have no
+     * time, so they resolve to the start of the day.
+     */
+    private int parseDateTime(final String value) {
+      if (value.length() == 8) {
+        return TimeRange.START_OF_DAY;
+      } else if (value.length() < 13 || value.charAt(8) != 'T') {
+        throw malformed(lineNumber, "invalid date-time \"" + value + "\"");
+      }
+
+      return parseTime(value.substring(9, 11) + ":" + value.substring(11, 13), lineNumber);
+    }
+
+    private String unescape(final String text) {
+      if (text.indexOf('\\') < 0) {
+        return text;
+      }
+
+      StringBuilder result = new StringBuilder(text.length());
+      for (int i = 0; i < text.length(); ++i) {
+        char c = text.charAt(i);
+
+        if (c == '\\' && i + 1 < text.length()) {
+          char escaped = text.charAt(++i);
+          result.append(escaped == 'n' || escaped == 'N' ? '\n' : escaped);
+        } else {
+          result.append(c);
+        }
+      }
+
+      return result.toString();
+    }
+  }
+}
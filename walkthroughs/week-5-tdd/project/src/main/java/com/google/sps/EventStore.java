@@ -0,0 +1,104 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * In-memory, append-only store of all the known events. Events are added in batches, and each
+ * batch is kept as an immutable list, so readers iterate a consistent snapshot without copying
+ * any event and writers never block them.
+ */
+public final class EventStore {
+  private static final EventStore INSTANCE = new EventStore(Arrays.asList(Events.events));
+
+  private final List<List<Event>> batches = new CopyOnWriteArrayList<>();
+  private final AtomicLong size = new AtomicLong();
+  private final List<Consumer<List<Event>>> listeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * Creates a new store, holding a copy of {@code events}.
+   */
+  public EventStore(Collection<Event> events) {
+    if (events == null) {
+      throw new IllegalArgumentException("events cannot be null. Use empty array instead.");
+    }
+
+    addAll(events);
+  }
+
+  /**
+   * Returns the store shared by the servlets, initially holding {@code Events.events}.
+   */
+  public static EventStore getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Adds a batch of events. The batch becomes visible to readers all at once.
+   */
+  public void addAll(Collection<Event> events) {
+    if (events.isEmpty()) {
+      return;
+    }
+
+    List<Event> batch = Collections.unmodifiableList(new ArrayList<>(events));
+
+    // Writers are serialized so that listeners see the batches in the order they were added.
+    synchronized (this) {
+      batches.add(batch);
+      size.addAndGet(batch.size());
+
+      for (Consumer<List<Event>> listener : listeners) {
+        listener.accept(batch);
+      }
+    }
+  }
+
+  /**
+   * Hands every batch to {@code listener}: first the ones already in the store, then each new
+   * one as it is added, so the listener sees every event exactly once. The listener is called
+   * while writers are blocked, so it should be quick.
+   */
+  public synchronized void subscribe(Consumer<List<Event>> listener) {
+    for (List<Event> batch : batches) {
+      listener.accept(batch);
+    }
+
+    listeners.add(listener);
+  }
+
+  /**
+   * Returns a sequential stream over a snapshot of the events currently in the store.
+   */
+  public Stream<Event> stream() {
+    return batches.stream().flatMap(List::stream);
+  }
+
+  /**
+   * Returns the number of events in the store.
+   */
+  public long size() {
+    return size.get();
+  }
+}
@@ -17,8 +17,13 @@ package com.google.sps;
 import com.google.sps.TimeRange;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.TreeMap;
+import java.util.stream.Stream;
 
 /**
  * This class exposes the {@code query} method, which finds available time slots
@@ -42,16 +47,251 @@ public final class FindMeetingQuery {
       throw new IllegalArgumentException("No query argument should be null");
     }
 
-    TimeTablePair timeTablePair = registerRelevantEvents(events, request.getAttendees(),
-                                                                 request.getOptionalAttendees());
-    List<TimeRange> mandatoryTimeTable = timeTablePair.getFirst();
-    List<TimeRange> optionalAndMandatoryTimeTable = timeTablePair.getSecond();
+    return query(events.iterator(), request);
+  }
 
-    Collection<TimeRange> mandatoryAndOptional = searchSuitableSlots(optionalAndMandatoryTimeTable,
-                                                                     request.getDuration());
-    
-    return mandatoryAndOptional.isEmpty() ?
-           searchSuitableSlots(mandatoryTimeTable, request.getDuration()) : mandatoryAndOptional;
+  /**
+   * This method is the single-pass variant of {@code query}. Every event is looked at once and
+   * then dropped, so memory stays bounded by the size of the timetable, whatever the number of
+   * events, e.g. when they are read from a file or a datastore cursor.
+   *
+   * @param events is an iterator over all previously scheduled meetings. It is exhausted
+   *    when this method returns.
+   * @param request provides the Meeting object, along with the attendees list.
+   * @return a list of all available time slots for the meeting.
+   * @throws IllegalArgumentException if any of the arguments is null.
+   */
+  public Collection<TimeRange> query(Iterator<Event> events, MeetingRequest request)
+                                   throws IllegalArgumentException {
+    if (request == null || events == null) {
+      throw new IllegalArgumentException("No query argument should be null");
+    }
+
+    return answer(registerRelevantEvents(events, request.getAttendees(),
+                                         request.getOptionalAttendees()),
+                  request.getDuration());
+  }
+
+  /**
+   * This method is the {@code Stream} counterpart of the single-pass {@code query}. The stream
+   * is consumed sequentially and is not closed by this method.
+   *
+   * @throws IllegalArgumentException if any of the arguments is null.
+   */
+  public Collection<TimeRange> query(Stream<Event> events, MeetingRequest request)
+                                   throws IllegalArgumentException {
+    if (request == null || events == null) {
+      throw new IllegalArgumentException("No query argument should be null");
+    }
+
+    return query(events.iterator(), request);
+  }
+
+  /**
+   * This method answers a request from a memory-mapped availability store instead of events.
+   * Only the bitmaps of the requested attendees on the given day are read, and nothing is
+   * deserialized.
+   *
+   * @param store holds the busy bitmaps of every attendee.
+   * @param day the day of the store's horizon the meeting is for.
+   * @param request provides the Meeting object, along with the attendees list.
+   * @return a list of all available time slots for the meeting.
+   * @throws IllegalArgumentException if any of the arguments is null, or the day is outside of
+   *    the store's horizon.
+   */
+  public Collection<TimeRange> query(MappedAvailabilityStore store, int day,
+                                     MeetingRequest request) throws IllegalArgumentException {
+    if (request == null || store == null) {
+      throw new IllegalArgumentException("No query argument should be null");
+    }
+
+    return answer(store.timeTables(day, request.getAttendees(), request.getOptionalAttendees()),
+                  request.getDuration());
+  }
+
+  /**
+   * This method answers a request from the busy time a registry keeps up to date. Every group
+   * entirely within the attendees contributes its precomputed union, and only the attendees
+   * left over are looked up one by one.
+   *
+   * @param registry holds the busy time of every attendee and group.
+   * @param request provides the Meeting object, along with the attendees list.
+   * @return a list of all available time slots for the meeting.
+   * @throws IllegalArgumentException if any of the arguments is null.
+   */
+  public Collection<TimeRange> query(GroupAvailabilityRegistry registry, MeetingRequest request)
+                                   throws IllegalArgumentException {
+    if (request == null || registry == null) {
+      throw new IllegalArgumentException("No query argument should be null");
+    }
+
+    return answer(registry.timeTables(request.getAttendees(), request.getOptionalAttendees()),
+                  request.getDuration());
+  }
+
+  /**
+   * This method answers several durations of the same meeting at once. The free gaps of the
+   * attendees are computed once and indexed by length, so every duration costs a binary search
+   * instead of a whole {@code query}.
+   *
+   * @param events is the list of all previously scheduled meetings.
+   * @param request provides the attendees list, along with the durations to answer for.
+   * @return for every requested duration, in ascending order, all the available time slots for
+   *    a meeting of that duration.
+   * @throws IllegalArgumentException if any of the arguments is null.
+   */
+  public Map<Long, Collection<TimeRange>> query(Collection<Event> events,
+                                                MultiDurationMeetingRequest request)
+                                                throws IllegalArgumentException {
+    if (request == null || events == null) {
+      throw new IllegalArgumentException("No query argument should be null");
+    }
+
+    return query(events.stream(), request);
+  }
+
+  /**
+   * This method is the single-pass, {@code Stream} counterpart of the multi-duration
+   * {@code query}.
+   *
+   * @throws IllegalArgumentException if any of the arguments is null.
+   */
+  public Map<Long, Collection<TimeRange>> query(Stream<Event> events,
+                                                MultiDurationMeetingRequest request)
+                                                throws IllegalArgumentException {
+    if (request == null || events == null) {
+      throw new IllegalArgumentException("No query argument should be null");
+    }
+
+    TimeTablePair timeTablePair = registerRelevantEvents(events.iterator(),
+                                                         request.getAttendees(),
+                                                         request.getOptionalAttendees());
+    FreeGapIndex mandatoryGaps = new FreeGapIndex(timeTablePair.getFirst());
+    FreeGapIndex optionalAndMandatoryGaps = new FreeGapIndex(timeTablePair.getSecond());
+
+    Map<Long, Collection<TimeRange>> answers = new TreeMap<>();
+    for (long duration : request.getDurations()) {
+      answers.put(duration, optionalAndMandatoryGaps.count(duration) > 0 ?
+                            optionalAndMandatoryGaps.gaps(duration) :
+                            mandatoryGaps.gaps(duration));
+    }
+
+    return answers;
+  }
+
+  /**
+   * This method lazily enumerates the concrete start times for a meeting, instead of whole
+   * available time slots. Start times are multiples of {@code granularity} minutes and are
+   * produced in ascending order, only as the caller asks for them.
+   *
+   * @param events is the list of all previously scheduled meetings.
+   * @param request provides the Meeting object, along with the attendees list.
+   * @param granularity the distance between two consecutive start times, in minutes.
+   * @param from the earliest start time to return, usually the cursor of a previous page.
+   * @return an iterator over the suitable start times, in minutes since the start of the day.
+   * @throws IllegalArgumentException if any of the arguments is null, or if the granularity
+   *    is not positive.
+   */
+  public PrimitiveIterator.OfInt queryStartTimes(Collection<Event> events, MeetingRequest request,
+                                                 int granularity, int from)
+                                                 throws IllegalArgumentException {
+    if (request == null || events == null) {
+      throw new IllegalArgumentException("No query argument should be null");
+    }
+
+    return queryStartTimes(events.stream(), request, granularity, from);
+  }
+
+  /**
+   * This method is the single-pass, {@code Stream} counterpart of {@code queryStartTimes}. The
+   * events are consumed before this method returns, only the start times are lazy.
+   *
+   * @throws IllegalArgumentException if any of the arguments is null, or if the granularity
+   *    is not positive.
+   */
+  public PrimitiveIterator.OfInt queryStartTimes(Stream<Event> events, MeetingRequest request,
+                                                 int granularity, int from)
+                                                 throws IllegalArgumentException {
+    if (request == null || events == null) {
+      throw new IllegalArgumentException("No query argument should be null");
+    }
+
+    return new CandidateStartTimes(selectTimeTable(events.iterator(), request),
+                                   request.getDuration(), granularity, from);
+  }
+
+  /**
+   * This method explains an empty answer of {@code query}: which mandatory attendees block the
+   * meeting, and the slots where only one or two of them are busy. Optional attendees are not
+   * considered, since {@code query} already drops them when they are the cause.
+   *
+   * @param events is the list of all previously scheduled meetings.
+   * @param request provides the Meeting object, along with the attendees list.
+   * @return the explanation, computed in a single sweep over the events. Can never be null.
+   * @throws IllegalArgumentException if any of the arguments is null.
+   */
+  public ConflictExplanation explainConflicts(Collection<Event> events, MeetingRequest request)
+                                              throws IllegalArgumentException {
+    if (request == null || events == null) {
+      throw new IllegalArgumentException("No query argument should be null");
+    }
+
+    return explainConflicts(events.stream(), request);
+  }
+
+  /**
+   * This method is the single-pass, {@code Stream} counterpart of {@code explainConflicts}.
+   *
+   * @throws IllegalArgumentException if any of the arguments is null.
+   */
+  public ConflictExplanation explainConflicts(Stream<Event> events, MeetingRequest request)
+                                              throws IllegalArgumentException {
+    if (request == null || events == null) {
+      throw new IllegalArgumentException("No query argument should be null");
+    }
+
+    return ConflictExplainer.explain(events.iterator(), request.getAttendees(),
+                                     request.getDuration());
+  }
+
+  /**
+   * This method builds the answer out of timetables of available slots, however they were
+   * computed. It is the common tail of every scheduling strategy.
+   *
+   * @param timeTablePair the free timetables for the mandatory attendees only, and for the
+   *    mandatory and optional attendees together. Cannot be null.
+   * @param duration the specified duration of the meeting.
+   * @return a collection of timeranges that can accomodate the meeting. Can never be null.
+   */
+  Collection<TimeRange> answer(final TimeTablePair timeTablePair, final long duration) {
+    return searchSuitableSlots(selectTimeTable(timeTablePair, duration), duration);
+  }
+
+  private List<TimeRange> selectTimeTable(final Iterator<Event> events,
+                                          final MeetingRequest request) {
+    return selectTimeTable(registerRelevantEvents(events, request.getAttendees(),
+                                                  request.getOptionalAttendees()),
+                           request.getDuration());
+  }
+
+  /**
+   * This method picks the timetable the answer is built from: the one that also accounts for
+   * the optional attendees if it has at least one suitable slot, else the mandatory-only one.
+   */
+  private List<TimeRange> selectTimeTable(final TimeTablePair timeTablePair,
+                                          final long duration) {
+    return hasSuitableSlot(timeTablePair.getSecond(), duration) ?
+           timeTablePair.getSecond() : timeTablePair.getFirst();
+  }
+
+  private boolean hasSuitableSlot(final List<TimeRange> timeTable, final long duration) {
+    for (TimeRange emptySlot : timeTable) {
+      if (emptySlot.duration() >= duration) {
+        return true;
+      }
+    }
+
+    return false;
   }
 
   /**
@@ -79,21 +319,23 @@ public final class FindMeetingQuery {
    * This method goes through a list of already scheduled events and creates
    * two timetables of available slots, regardless of their duration.
    *
-   * @param events a collection of all scheduled events.
+   * @param events an iterator over all scheduled events, consumed in a single pass.
    * @param mandatoryAttendees a list of mandatory attendees for the event to be scheduled.
    * @param optionalAttendees a list of optional attendees for the event to be scheduled.
    * @return a pair of lists of TimeRanges which represent empty timespans for either
    *    mandatory attendees and optional attendees, or only for mandatory attendees.
    */
-  private TimeTablePair registerRelevantEvents(final Collection<Event> events,
-                                               final Collection<String> mandatoryAttendees,
-                                               final Collection<String> optionalAttendees) {
+  TimeTablePair registerRelevantEvents(final Iterator<Event> events,
+                                       final Collection<String> mandatoryAttendees,
+                                       final Collection<String> optionalAttendees) {
     List<TimeRange> timeTable = new ArrayList<>();
     List<TimeRange> optionalTimeTable = new ArrayList<>();
     timeTable.add(TimeRange.WHOLE_DAY);
     optionalTimeTable.add(TimeRange.WHOLE_DAY);
 
-    for (Event event : events) {
+    while (events.hasNext()) {
+      Event event = events.next();
+
       if (relevantEvent(event, mandatoryAttendees)) {
         splitTimeTable(timeTable, event.getWhen());
         splitTimeTable(optionalTimeTable, event.getWhen());
@@ -139,7 +381,8 @@ public final class FindMeetingQuery {
    *    splitter:                     [-----]
    *    result:             [------]           [-------]
    *
-   * Mention: for this method, it will only matter if the splitter is contained or not.
+   * Mention: for this method, it will only matter if the splitter is contained or not. An empty
+   * splitter occupies no time, so it leaves the timetable as it is, like every other strategy.
    *
    * @param originalTimeTable a list of all previously registered events. When this
    *    method returns, the result is stored in this object. Cannot be null.
@@ -148,7 +391,7 @@ public final class FindMeetingQuery {
    */
   private void splitTimeTable(final List<TimeRange> originalTimeTable,
                               final TimeRange timeSplitter) {
-    if (originalTimeTable.isEmpty()) {
+    if (originalTimeTable.isEmpty() || timeSplitter.duration() <= 0) {
       return;
     }
 
@@ -248,21 +491,3 @@ public final class FindMeetingQuery {
     }
   }
 }
-
-final class TimeTablePair {
-  private List<TimeRange> first;
-  private List<TimeRange> second;
-
-  TimeTablePair(final List<TimeRange> first, final List<TimeRange> second) {
-    this.first = first;
-    this.second = second;
-  }
-
-  List<TimeRange> getFirst() {
-    return first;
-  }
-
-  List<TimeRange> getSecond() {
-    return second;
-  }
-}
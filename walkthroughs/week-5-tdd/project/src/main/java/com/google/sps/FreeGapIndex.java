@@ -0,0 +1,78 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The free gaps of a timetable, indexed by their length. Gaps are kept sorted by decreasing
+ * duration, so the gaps that fit a meeting of any duration are always a prefix of that order,
+ * whose length is found with a single binary search.
+ */
+final class FreeGapIndex {
+  private static final Comparator<TimeRange> ORDER_BY_DURATION_DESC = new Comparator<TimeRange>() {
+    @Override
+    public int compare(TimeRange a, TimeRange b) {
+      int byDuration = Integer.compare(b.duration(), a.duration());
+      return byDuration != 0 ? byDuration : TimeRange.ORDER_BY_START.compare(a, b);
+    }
+  };
+
+  private final TimeRange[] gaps;
+
+  /**
+   * @param timeTable the free slots of a timetable, regardless of their duration. Cannot be null.
+   */
+  FreeGapIndex(final Collection<TimeRange> timeTable) {
+    gaps = timeTable.toArray(new TimeRange[0]);
+    Arrays.sort(gaps, ORDER_BY_DURATION_DESC);
+  }
+
+  /**
+   * Returns how many gaps can accomodate a meeting of the given duration.
+   */
+  int count(final long duration) {
+    // Find the first gap that is too short; every gap before it is long enough.
+    int low = 0;
+    int high = gaps.length;
+
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+
+      if (gaps[middle].duration() >= duration) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    return low;
+  }
+
+  /**
+   * Returns the gaps that can accomodate a meeting of the given duration, sorted by start time.
+   */
+  List<TimeRange> gaps(final long duration) {
+    List<TimeRange> suitable = new ArrayList<>(Arrays.asList(gaps).subList(0, count(duration)));
+    Collections.sort(suitable, TimeRange.ORDER_BY_START);
+
+    return suitable;
+  }
+}
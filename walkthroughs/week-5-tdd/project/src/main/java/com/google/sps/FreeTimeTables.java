@@ -0,0 +1,137 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Helpers shared by the scheduling strategies that don't split a timetable in place, turning
+ * busy time into timetables of available slots.
+ */
+final class FreeTimeTables {
+  private FreeTimeTables() {
+    // Disallow instances.
+  }
+
+  /**
+   * Builds both free timetables from one bit per minute of the day: one bitmap for the
+   * mandatory attendees, and one for the mandatory and optional attendees together.
+   */
+  static TimeTablePair fromMinuteBitmaps(final Iterator<Event> events,
+                                         final Collection<String> mandatoryAttendees,
+                                         final Collection<String> optionalAttendees) {
+    BitSet busy = new BitSet(TimeRange.WHOLE_DAY.end());
+    BitSet optionalBusy = new BitSet(TimeRange.WHOLE_DAY.end());
+
+    while (events.hasNext()) {
+      Event event = events.next();
+      int start = Math.max(event.getWhen().start(), TimeRange.WHOLE_DAY.start());
+      int end = Math.min(event.getWhen().end(), TimeRange.WHOLE_DAY.end());
+
+      if (start >= end) {
+        continue;
+      }
+
+      if (attendsAny(event, mandatoryAttendees)) {
+        busy.set(start, end);
+        optionalBusy.set(start, end);
+      } else if (attendsAny(event, optionalAttendees)) {
+        optionalBusy.set(start, end);
+      }
+    }
+
+    return new TimeTablePair(freeSlots(busy), freeSlots(optionalBusy));
+  }
+
+  /**
+   * Returns the slots of the day where no bit of {@code busy} is set.
+   */
+  static List<TimeRange> freeSlots(final BitSet busy) {
+    List<TimeRange> timeTable = new ArrayList<>();
+    int dayEnd = TimeRange.WHOLE_DAY.end();
+
+    for (int start = busy.nextClearBit(TimeRange.WHOLE_DAY.start()); start < dayEnd; ) {
+      int end = busy.nextSetBit(start);
+      end = end < 0 || end > dayEnd ? dayEnd : end;
+
+      timeTable.add(TimeRange.fromStartEnd(start, end, false));
+      start = busy.nextClearBit(end);
+    }
+
+    return timeTable;
+  }
+
+  /**
+   * Merges busy ranges, in any order, into sorted and disjoint ones. Touching ranges are merged.
+   */
+  static List<TimeRange> mergeBusy(final List<TimeRange> busy) {
+    List<TimeRange> sorted = new ArrayList<>(busy);
+    Collections.sort(sorted, TimeRange.ORDER_BY_START);
+
+    List<TimeRange> merged = new ArrayList<>();
+    for (TimeRange range : sorted) {
+      if (range.duration() <= 0) {
+        continue;
+      }
+
+      int last = merged.size() - 1;
+      if (last >= 0 && merged.get(last).end() >= range.start()) {
+        TimeRange previous = merged.remove(last);
+        merged.add(TimeRange.fromStartEnd(previous.start(),
+                                          Math.max(previous.end(), range.end()), false));
+      } else {
+        merged.add(range);
+      }
+    }
+
+    return merged;
+  }
+
+  /**
+   * Returns the slots of the day not covered by {@code busy}, which must be sorted and disjoint.
+   */
+  static List<TimeRange> complement(final List<TimeRange> busy) {
+    List<TimeRange> timeTable = new ArrayList<>();
+    int freeFrom = TimeRange.WHOLE_DAY.start();
+
+    for (TimeRange range : busy) {
+      if (range.start() > freeFrom) {
+        timeTable.add(TimeRange.fromStartEnd(freeFrom, range.start(), false));
+      }
+      freeFrom = Math.max(freeFrom, range.end());
+    }
+
+    if (freeFrom < TimeRange.WHOLE_DAY.end()) {
+      timeTable.add(TimeRange.fromStartEnd(freeFrom, TimeRange.WHOLE_DAY.end(), false));
+    }
+
+    return timeTable;
+  }
+
+  private static boolean attendsAny(final Event event, final Collection<String> people) {
+    for (String person : people) {
+      if (event.getAttendees().contains(person)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
@@ -0,0 +1,281 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Keeps the merged busy time of named groups of attendees, such as teams or interview panels,
+ * up to date as events are added and removed. A request that includes a whole group then reads
+ * one precomputed union instead of the busy time of every member.
+ *
+ * Busy time is tracked as coverage counts, so removing an event only frees the minutes no other
+ * event of the group still covers. The busy time of every single attendee is tracked the same
+ * way, for the people of a request that are not part of any of its groups.
+ */
+public final class GroupAvailabilityRegistry {
+  private static final Comparator<Group> LARGEST_FIRST = new Comparator<Group>() {
+    @Override
+    public int compare(Group a, Group b) {
+      return Integer.compare(b.members.size(), a.members.size());
+    }
+  };
+
+  private final Map<String, Coverage> attendeeCoverage = new HashMap<>();
+  private final Map<String, Group> groups = new HashMap<>();
+  private final Map<String, Set<Group>> groupsByMember = new HashMap<>();
+
+  /**
+   * Creates a registry that follows every event of {@code store}, past and future.
+   */
+  public static GroupAvailabilityRegistry watching(EventStore store) {
+    GroupAvailabilityRegistry registry = new GroupAvailabilityRegistry();
+    store.subscribe(registry::addEvents);
+    return registry;
+  }
+
+  /**
+   * Defines a group, or redefines it if the name is already taken. Its busy time is built from
+   * the events seen so far, and kept up to date from then on.
+   *
+   * @throws IllegalArgumentException if the group has no members.
+   */
+  public synchronized void defineGroup(String name, Collection<String> members)
+                                       throws IllegalArgumentException {
+    if (members == null || members.isEmpty()) {
+      throw new IllegalArgumentException("A group must have at least one member");
+    }
+
+    removeGroup(name);
+
+    Group group = new Group(members);
+    for (String member : group.members) {
+      Coverage coverage = attendeeCoverage.get(member);
+      if (coverage != null) {
+        group.coverage.addAll(coverage);
+      }
+
+      Set<Group> memberOf = groupsByMember.get(member);
+      if (memberOf == null) {
+        memberOf = new HashSet<>();
+        groupsByMember.put(member, memberOf);
+      }
+      memberOf.add(group);
+    }
+
+    groups.put(name, group);
+  }
+
+  /**
+   * Forgets a group. Does nothing if there is no such group.
+   */
+  public synchronized void removeGroup(String name) {
+    Group group = groups.remove(name);
+    if (group == null) {
+      return;
+    }
+
+    for (String member : group.members) {
+      Set<Group> memberOf = groupsByMember.get(member);
+      memberOf.remove(group);
+      if (memberOf.isEmpty()) {
+        groupsByMember.remove(member);
+      }
+    }
+  }
+
+  /**
+   * Returns the sorted and disjoint busy ranges of a group, read-only.
+   *
+   * @throws IllegalArgumentException if there is no such group.
+   */
+  public synchronized List<TimeRange> getGroupBusy(String name) throws IllegalArgumentException {
+    Group group = groups.get(name);
+    if (group == null) {
+      throw new IllegalArgumentException("Unknown group: " + name);
+    }
+
+    return group.coverage.busy();
+  }
+
+  public synchronized void addEvents(Collection<Event> events) {
+    for (Event event : events) {
+      update(event, 1);
+    }
+  }
+
+  /**
+   * Removes events previously added, be it directly or through the watched store.
+   */
+  public synchronized void removeEvents(Collection<Event> events) {
+    for (Event event : events) {
+      update(event, -1);
+    }
+  }
+
+  /**
+   * Builds both free timetables, using the busy time of every group entirely within the
+   * attendees, plus that of the attendees left over.
+   */
+  synchronized TimeTablePair timeTables(final Collection<String> mandatoryAttendees,
+                                        final Collection<String> optionalAttendees) {
+    List<TimeRange> busy = FreeTimeTables.mergeBusy(collect(mandatoryAttendees));
+
+    Set<String> everyone = new HashSet<>(mandatoryAttendees);
+    everyone.addAll(optionalAttendees);
+    List<TimeRange> optionalBusy = FreeTimeTables.mergeBusy(collect(everyone));
+
+    return new TimeTablePair(FreeTimeTables.complement(busy),
+                             FreeTimeTables.complement(optionalBusy));
+  }
+
+  private void update(final Event event, final int change) {
+    TimeRange when = event.getWhen();
+    if (when.duration() <= 0) {
+      return;
+    }
+
+    for (String attendee : event.getAttendees()) {
+      Coverage coverage = attendeeCoverage.get(attendee);
+      if (coverage == null) {
+        coverage = new Coverage();
+        attendeeCoverage.put(attendee, coverage);
+      }
+      coverage.add(when, change);
+      if (coverage.isEmpty()) {
+        attendeeCoverage.remove(attendee);
+      }
+
+      // Counted once per member, so that a group's counts are the sum of its members' ones.
+      Set<Group> memberOf = groupsByMember.get(attendee);
+      if (memberOf != null) {
+        for (Group group : memberOf) {
+          group.coverage.add(when, change);
+        }
+      }
+    }
+  }
+
+  /**
+   * Collects the busy ranges of the attendees, picking the largest groups they fully contain
+   * first, then adding the attendees no picked group covers.
+   */
+  private List<TimeRange> collect(final Collection<String> attendees) {
+    Set<Group> candidates = new HashSet<>();
+    for (String attendee : attendees) {
+      Set<Group> memberOf = groupsByMember.get(attendee);
+      if (memberOf != null) {
+        candidates.addAll(memberOf);
+      }
+    }
+
+    List<Group> sorted = new ArrayList<>(candidates);
+    Collections.sort(sorted, LARGEST_FIRST);
+
+    Set<String> left = new HashSet<>(attendees);
+    List<TimeRange> busy = new ArrayList<>();
+
+    for (Group group : sorted) {
+      if (attendees.containsAll(group.members) && !Collections.disjoint(left, group.members)) {
+        busy.addAll(group.coverage.busy());
+        left.removeAll(group.members);
+      }
+    }
+
+    for (String attendee : left) {
+      Coverage coverage = attendeeCoverage.get(attendee);
+      if (coverage != null) {
+        busy.addAll(coverage.busy());
+      }
+    }
+
+    return busy;
+  }
+
+  private static final class Group {
+    private final Set<String> members;
+    private final Coverage coverage = new Coverage();
+
+    Group(final Collection<String> members) {
+      this.members = Collections.unmodifiableSet(new HashSet<>(members));
+    }
+  }
+
+  /**
+   * How many events cover every minute, as count changes at range boundaries. The merged busy
+   * ranges are derived lazily, and cached until the next change.
+   */
+  private static final class Coverage {
+    private final TreeMap<Integer, Integer> deltas = new TreeMap<>();
+    private List<TimeRange> busy;
+
+    void add(final TimeRange when, final int change) {
+      addDelta(when.start(), change);
+      addDelta(when.end(), -change);
+      busy = null;
+    }
+
+    void addAll(final Coverage other) {
+      for (Map.Entry<Integer, Integer> delta : other.deltas.entrySet()) {
+        addDelta(delta.getKey(), delta.getValue());
+      }
+      busy = null;
+    }
+
+    boolean isEmpty() {
+      return deltas.isEmpty();
+    }
+
+    List<TimeRange> busy() {
+      if (busy == null) {
+        List<TimeRange> ranges = new ArrayList<>();
+        int count = 0;
+        int busyFrom = 0;
+
+        for (Map.Entry<Integer, Integer> delta : deltas.entrySet()) {
+          if (count == 0) {
+            busyFrom = delta.getKey();
+          }
+          count += delta.getValue();
+          if (count == 0) {
+            ranges.add(TimeRange.fromStartEnd(busyFrom, delta.getKey(), false));
+          }
+        }
+
+        busy = Collections.unmodifiableList(ranges);
+      }
+
+      return busy;
+    }
+
+    private void addDelta(final int point, final int change) {
+      int delta = deltas.getOrDefault(point, 0) + change;
+      if (delta == 0) {
+        deltas.remove(point);
+      } else {
+        deltas.put(point, delta);
+      }
+    }
+  }
+}
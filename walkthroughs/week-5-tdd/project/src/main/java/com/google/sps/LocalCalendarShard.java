@@ -0,0 +1,88 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A shard living in this JVM. Its state is only ever touched by its own single thread, so it
+ * needs no locking and stays in the cache of whichever core runs that thread.
+ */
+final class LocalCalendarShard implements CalendarShard {
+  private final ExecutorService executor;
+  private final ShardedCalendar.Partitioner partitioner;
+  private final int shardIdx;
+
+  // Only accessed from the executor thread.
+  private final Map<String, List<TimeRange>> busyByAttendee = new HashMap<>();
+
+  LocalCalendarShard(final ShardedCalendar.Partitioner partitioner, final int shardIdx) {
+    this.partitioner = partitioner;
+    this.shardIdx = shardIdx;
+    executor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "calendar-shard-" + shardIdx);
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Override
+  public CompletableFuture<Void> addAll(final Collection<Event> batch) {
+    return CompletableFuture.runAsync(() -> {
+      for (Event event : batch) {
+        for (String person : event.getAttendees()) {
+          if (partitioner.shardOf(person) != shardIdx) {
+            continue;
+          }
+
+          List<TimeRange> busy = busyByAttendee.get(person);
+          if (busy == null) {
+            busy = new ArrayList<>();
+            busyByAttendee.put(person, busy);
+          }
+          busy.add(event.getWhen());
+        }
+      }
+    }, executor);
+  }
+
+  @Override
+  public CompletableFuture<List<TimeRange>> busyUnion(final Collection<String> attendees) {
+    return CompletableFuture.supplyAsync(() -> {
+      List<TimeRange> busy = new ArrayList<>();
+
+      for (String person : attendees) {
+        List<TimeRange> personBusy = busyByAttendee.get(person);
+        if (personBusy != null) {
+          busy.addAll(personBusy);
+        }
+      }
+
+      return FreeTimeTables.mergeBusy(busy);
+    }, executor);
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+}
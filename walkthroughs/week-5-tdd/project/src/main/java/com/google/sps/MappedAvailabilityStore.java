@@ -0,0 +1,326 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-attendee, per-day busy bitmaps kept in a memory-mapped file, so that the availability of
+ * a very large calendar lives in the OS page cache rather than on the heap. Only the days and
+ * people a query touches are ever paged in, and each of their records is only copied into a
+ * small array of words, with no objects per event.
+ *
+ * The file starts with a header, followed by one fixed-size record per (attendee ID, day):
+ * {@code BusyMasks.WORDS_PER_DAY} little-endian longs, one bit per minute. Attendee IDs are
+ * handed out in order of first appearance, and their names are kept in a sibling file with the
+ * ".attendees" suffix, one per line, the line number being the ID. A new name is synced to disk
+ * before its ID is handed out, so no record is ever written for an ID that a crash could give
+ * to someone else, and a line left torn by a crash is cut off on open.
+ *
+ * Writes are serialized. Reads take no lock, and may see a concurrent write half done.
+ */
+public final class MappedAvailabilityStore implements AutoCloseable {
+  private static final int MAGIC = 0x41564c31;
+  private static final int HEADER_SIZE = 16;
+  private static final int RECORD_SIZE = BusyMasks.WORDS_PER_DAY * Long.BYTES;
+  private static final String NAMES_SUFFIX = ".attendees";
+
+  private final FileChannel channel;
+  private final FileChannel names;
+  private final int maxAttendees;
+  private final int days;
+  // A single mapping can't exceed 2 GB, so the records are mapped a few attendees at a time.
+  private final int attendeesPerRegion;
+  private final MappedByteBuffer[] regions;
+  // Read without locking by queries, so it must be safe to read while a new ID is added.
+  private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+  private MappedAvailabilityStore(final FileChannel channel, final FileChannel names,
+                                  final int maxAttendees, final int days) throws IOException {
+    this.channel = channel;
+    this.names = names;
+    this.maxAttendees = maxAttendees;
+    this.days = days;
+
+    long attendeeSize = (long) days * RECORD_SIZE;
+    attendeesPerRegion =
+        (int) Math.max(1, Math.min(maxAttendees, Integer.MAX_VALUE / attendeeSize));
+    regions = new MappedByteBuffer[(maxAttendees + attendeesPerRegion - 1) / attendeesPerRegion];
+
+    for (int i = 0; i < regions.length; ++i) {
+      int attendees = Math.min(attendeesPerRegion, maxAttendees - i * attendeesPerRegion);
+      regions[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                               HEADER_SIZE + i * attendeesPerRegion * attendeeSize,
+                               attendees * attendeeSize);
+      regions[i].order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+
+  /**
+   * Creates a new, all-free store, replacing any file at {@code path}. The file is sized for
+   * every record up front, but stays sparse until records are written.
+   *
+   * @param maxAttendees the number of attendees the store can hold.
+   * @param days the number of days of the horizon.
+   * @throws IllegalArgumentException if either size is not positive.
+   */
+  public static MappedAvailabilityStore create(Path path, int maxAttendees, int days)
+                                               throws IOException, IllegalArgumentException {
+    if (maxAttendees <= 0 || days <= 0) {
+      throw new IllegalArgumentException("The store must hold at least one attendee and day");
+    }
+
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                                           StandardOpenOption.TRUNCATE_EXISTING,
+                                           StandardOpenOption.READ, StandardOpenOption.WRITE);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC).putInt(maxAttendees).putInt(days).putInt(RECORD_SIZE).flip();
+    while (header.hasRemaining()) {
+      channel.write(header);
+    }
+
+    FileChannel names = FileChannel.open(namesFile(path), StandardOpenOption.CREATE,
+                                         StandardOpenOption.TRUNCATE_EXISTING,
+                                         StandardOpenOption.WRITE);
+    return new MappedAvailabilityStore(channel, names, maxAttendees, days);
+  }
+
+  /**
+   * Opens a store previously written by {@code create}.
+   *
+   * @throws IllegalArgumentException if the file is not such a store.
+   */
+  public static MappedAvailabilityStore open(Path path)
+                                             throws IOException, IllegalArgumentException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+                                           StandardOpenOption.WRITE);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    while (header.hasRemaining() && channel.read(header) >= 0) {
+      // Keep reading until the header is complete or the file ends.
+    }
+    header.flip();
+
+    if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+      channel.close();
+      throw new IllegalArgumentException("Not an availability store: " + path);
+    }
+
+    int maxAttendees = header.getInt();
+    int days = header.getInt();
+    if (header.getInt() != RECORD_SIZE) {
+      channel.close();
+      throw new IllegalArgumentException("Unsupported record size in " + path);
+    }
+
+    // Only whole lines count: a name torn by a crash never had its ID handed out.
+    byte[] bytes = Files.readAllBytes(namesFile(path));
+    int whole = bytes.length;
+    while (whole > 0 && bytes[whole - 1] != '\n') {
+      --whole;
+    }
+
+    FileChannel names = FileChannel.open(namesFile(path), StandardOpenOption.WRITE);
+    names.truncate(whole);
+    names.position(whole);
+    MappedAvailabilityStore store =
+        new MappedAvailabilityStore(channel, names, maxAttendees, days);
+    // Every line ends with a line break, after which split leaves an empty string.
+    String[] lines = new String(bytes, 0, whole, StandardCharsets.UTF_8).split("\n", -1);
+    for (int line = 0; line < lines.length - 1; ++line) {
+      store.ids.put(lines[line], store.ids.size());
+    }
+
+    return store;
+  }
+
+  public int getMaxAttendees() {
+    return maxAttendees;
+  }
+
+  public int getDays() {
+    return days;
+  }
+
+  /**
+   * Returns the ID of an attendee, handing out the next free one if the attendee is new.
+   *
+   * @throws IllegalArgumentException if the attendee is new and the store is full.
+   */
+  public synchronized int attendeeId(String attendee) throws IOException,
+                                                             IllegalArgumentException {
+    Integer id = ids.get(attendee);
+    if (id != null) {
+      return id;
+    }
+
+    if (ids.size() == maxAttendees) {
+      throw new IllegalArgumentException("The store can't hold more than " + maxAttendees +
+                                         " attendees");
+    }
+    if (attendee.indexOf('\n') >= 0 || attendee.indexOf('\r') >= 0) {
+      throw new IllegalArgumentException("Attendee names cannot contain line breaks");
+    }
+
+    // Synced before any record is written for the ID.
+    ByteBuffer line = ByteBuffer.wrap((attendee + "\n").getBytes(StandardCharsets.UTF_8));
+    while (line.hasRemaining()) {
+      names.write(line);
+    }
+    names.force(false);
+    ids.put(attendee, ids.size());
+    return ids.size() - 1;
+  }
+
+  /**
+   * Marks {@code when} of the given day as busy for the attendee.
+   *
+   * @throws IllegalArgumentException if the day is outside of the horizon, or the store is full.
+   */
+  public synchronized void markBusy(String attendee, int day, TimeRange when)
+                                    throws IOException, IllegalArgumentException {
+    int id = attendeeId(attendee);
+    long[] words = read(id, day, new long[BusyMasks.WORDS_PER_DAY]);
+    BusyMasks.markBusy(words, 0, when);
+
+    ByteBuffer region = regions[id / attendeesPerRegion];
+    int offset = offset(id, day);
+    for (int i = 0; i < words.length; ++i) {
+      region.putLong(offset + i * Long.BYTES, words[i]);
+    }
+  }
+
+  /**
+   * Marks the events as busy on the given day, for all of their attendees.
+   */
+  public void addAll(Collection<Event> events, int day) throws IOException,
+                                                               IllegalArgumentException {
+    for (Event event : events) {
+      for (String attendee : event.getAttendees()) {
+        markBusy(attendee, day, event.getWhen());
+      }
+    }
+  }
+
+  /**
+   * Checks if the attendee is busy at the given minute of the given day. Unknown attendees are
+   * always free.
+   *
+   * @throws IllegalArgumentException if the minute is not within the day.
+   */
+  public boolean isBusy(String attendee, int day, int minute) throws IllegalArgumentException {
+    if (minute < 0 || minute >= TimeRange.WHOLE_DAY.duration()) {
+      throw new IllegalArgumentException("The minute is outside of the day");
+    }
+
+    Integer id = ids.get(attendee);
+    if (id == null) {
+      return false;
+    }
+
+    long word = regions[id / attendeesPerRegion].getLong(offset(id, day) +
+                                                          (minute >>> 6) * Long.BYTES);
+    return (word & (1L << minute)) != 0;
+  }
+
+  /**
+   * Flushes the records to disk. The attendee names already are, as soon as they are added.
+   */
+  public synchronized void force() throws IOException {
+    for (MappedByteBuffer region : regions) {
+      region.force();
+    }
+  }
+
+  /**
+   * Flushes and closes the store. The mappings themselves are released when they are garbage
+   * collected, as Java 8 has no way to unmap them earlier.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    force();
+    names.close();
+    channel.close();
+  }
+
+  /**
+   * Builds both free timetables of one day, by OR-ing the records of the attendees straight
+   * out of the mapped file.
+   */
+  TimeTablePair timeTables(final int day, final Collection<String> mandatoryAttendees,
+                           final Collection<String> optionalAttendees) {
+    long[] busy = new long[BusyMasks.WORDS_PER_DAY];
+    long[] record = new long[BusyMasks.WORDS_PER_DAY];
+    orRecords(day, mandatoryAttendees, busy, record);
+
+    long[] optionalBusy = busy.clone();
+    orRecords(day, optionalAttendees, optionalBusy, record);
+
+    return new TimeTablePair(FreeTimeTables.freeSlots(BitSet.valueOf(busy)),
+                             FreeTimeTables.freeSlots(BitSet.valueOf(optionalBusy)));
+  }
+
+  private void orRecords(final int day, final Collection<String> attendees, final long[] busy,
+                         final long[] record) {
+    for (String attendee : attendees) {
+      Integer id = ids.get(attendee);
+      if (id == null) {
+        continue;
+      }
+
+      read(id, day, record);
+      for (int i = 0; i < busy.length; ++i) {
+        busy[i] |= record[i];
+      }
+    }
+  }
+
+  private long[] read(final int id, final int day, final long[] words) {
+    ByteBuffer region = regions[id / attendeesPerRegion];
+    int offset = offset(id, day);
+
+    for (int i = 0; i < words.length; ++i) {
+      words[i] = region.getLong(offset + i * Long.BYTES);
+    }
+
+    return words;
+  }
+
+  /**
+   * Returns the offset of a record within the region of its attendee.
+   */
+  private int offset(final int id, final int day) {
+    if (day < 0 || day >= days) {
+      throw new IllegalArgumentException("The day is outside of the store's horizon");
+    }
+
+    return ((id % attendeesPerRegion) * days + day) * RECORD_SIZE;
+  }
+
+  private static Path namesFile(final Path path) {
+    return path.resolveSibling(path.getFileName() + NAMES_SUFFIX);
+  }
+}
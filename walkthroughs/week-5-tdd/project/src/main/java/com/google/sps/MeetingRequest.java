@@ -18,7 +18,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 
 public final class MeetingRequest {
 
@@ -39,6 +42,22 @@ public final class MeetingRequest {
   // The duration of the meeting in minutes.
   private final long duration;
 
+  // Soft preferences, only used to rank the slots that satisfy the mandatory attendees. Any of
+  // them may be missing from the JSON, hence the null checks in the getters.
+
+  // The time ranges the meeting should preferably fall into.
+  private final List<TimeRange> preferred_windows = new ArrayList<>();
+
+  // Whether the meeting should not start right after, or end right before, another meeting of
+  // an attendee.
+  private boolean avoid_back_to_back;
+
+  // Whether the meeting should stay out of the lunch break.
+  private boolean keep_lunch_free;
+
+  // How much every attendee matters, 1 for the ones that are not listed.
+  private final Map<String, Double> attendee_weights = new HashMap<>();
+
   public MeetingRequest(Collection<String> attendees, long duration) {
     this.duration = duration;
     this.attendees.addAll(attendees);
@@ -73,4 +92,62 @@ public final class MeetingRequest {
   public long getDuration() {
     return duration;
   }
+
+  /**
+   * Returns a read-only copy of the time ranges the meeting should preferably fall into.
+   */
+  public List<TimeRange> getPreferredWindows() {
+    return preferred_windows == null ? Collections.<TimeRange>emptyList() :
+                                       Collections.unmodifiableList(preferred_windows);
+  }
+
+  /**
+   * Adds one time range the meeting should preferably fall into.
+   */
+  public void addPreferredWindow(TimeRange window) {
+    preferred_windows.add(window);
+  }
+
+  /**
+   * Returns whether the meeting should keep a break from the other meetings of its attendees.
+   */
+  public boolean avoidsBackToBack() {
+    return avoid_back_to_back;
+  }
+
+  public void setAvoidBackToBack(boolean avoidBackToBack) {
+    this.avoid_back_to_back = avoidBackToBack;
+  }
+
+  /**
+   * Returns whether the meeting should stay out of the lunch break.
+   */
+  public boolean keepsLunchFree() {
+    return keep_lunch_free;
+  }
+
+  public void setKeepLunchFree(boolean keepLunchFree) {
+    this.keep_lunch_free = keepLunchFree;
+  }
+
+  /**
+   * Returns how much an attendee matters when ranking slots, 1 unless set otherwise.
+   */
+  public double getAttendeeWeight(String attendee) {
+    Double weight = attendee_weights == null ? null : attendee_weights.get(attendee);
+    return weight == null ? 1 : weight;
+  }
+
+  /**
+   * Sets how much an attendee matters when ranking slots.
+   *
+   * @throws IllegalArgumentException if the weight is negative.
+   */
+  public void setAttendeeWeight(String attendee, double weight) throws IllegalArgumentException {
+    if (weight < 0) {
+      throw new IllegalArgumentException("Attendee weights cannot be negative");
+    }
+
+    attendee_weights.put(attendee, weight);
+  }
 }
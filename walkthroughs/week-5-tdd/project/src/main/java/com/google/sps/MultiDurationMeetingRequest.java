@@ -0,0 +1,71 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.TreeSet;
+
+/**
+ * A {@code MeetingRequest} asking for several possible durations of the same meeting at once,
+ * e.g. to offer 15, 30 and 60 minute options for the same attendees.
+ */
+public final class MultiDurationMeetingRequest {
+
+  // All the people that should be attending this new meeting. Use a set to avoid duplicates.
+  private final Collection<String> attendees = new HashSet<>();
+
+  // Some optional attendees for this new meeting. Use a set to avoid duplicates.
+  private final Collection<String> optional_attendees = new HashSet<>();
+
+  // The possible durations of the meeting in minutes. Use a set to avoid duplicates.
+  private final Collection<Long> durations = new TreeSet<>();
+
+  public MultiDurationMeetingRequest(Collection<String> attendees, Collection<Long> durations) {
+    this.attendees.addAll(attendees);
+    this.durations.addAll(durations);
+  }
+
+  /**
+   * Returns a read-only copy of the people who are required to attend this meeting.
+   */
+  public Collection<String> getAttendees() {
+    return Collections.unmodifiableCollection(attendees);
+  }
+
+  /**
+   * Returns a read-only copy of the people who are optional to attend this meeting.
+   */
+  public Collection<String> getOptionalAttendees() {
+    return Collections.unmodifiableCollection(optional_attendees);
+  }
+
+  /**
+   * Adds one optional attendee for the meeting.
+   */
+  public void addOptionalAttendee(String attendee) {
+    if (!attendees.contains(attendee)) {
+      optional_attendees.add(attendee);
+    }
+  }
+
+  /**
+   * Returns a read-only copy of the possible durations of the meeting in minutes.
+   */
+  public Collection<Long> getDurations() {
+    return Collections.unmodifiableCollection(durations);
+  }
+}
@@ -0,0 +1,220 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Sits in front of {@code FindMeetingQuery} and picks, for every request, the scheduling
+ * strategy that suits its shape best. The choice is based on statistics the planner keeps up
+ * to date as events are added to its store, and can be forced per request, e.g. for
+ * benchmarking.
+ */
+public final class QueryPlanner {
+  private static final Logger logger = Logger.getLogger(QueryPlanner.class.getName());
+
+  // Past this many relevant events, splitting an in-place timetable costs more than a bitmap.
+  static final double DENSE_EVENT_ESTIMATE = 64;
+
+  // Past this many events, scanning all of them for every request costs more than an index.
+  static final int LARGE_EVENT_COUNT = 10_000;
+
+  /**
+   * The ways the free timetables of a request can be built.
+   */
+  public enum Strategy {
+    // Splits a list of free slots with every relevant event. Best for sparse calendars.
+    INTERVAL_SWEEP,
+    // Marks the busy minutes of the day in a bitmap. Best for many attendees with dense days.
+    MINUTE_BITMAP,
+    // Reads precomputed per-attendee busy lists. Best for many requests over many events.
+    FREE_LISTS,
+    // Scatters the request over attendee-partitioned shards, one thread each. Never planned,
+    // since it only pays off once the busy lists outgrow the cache of a single core.
+    SHARDED
+  }
+
+  private final EventStore store;
+  private final FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+
+  // Gathered one batch at a time, without keeping the events. Guarded by this.
+  private final Set<String> attendees = new HashSet<>();
+  private long eventCount;
+  private long memberships;
+
+  // Built the first time FREE_LISTS runs, then kept up to date with the store. Not guarded by
+  // this, which the store's writers take to update the statistics.
+  private final Object indexLock = new Object();
+  private volatile AttendeeFreeLists freeLists;
+  // Likewise for SHARDED, whose shard threads live as long as the planner.
+  private volatile ShardedCalendar shardedCalendar;
+
+  /**
+   * Creates a planner over a fixed set of events.
+   *
+   * @param events all the scheduled events. Must be non-null.
+   */
+  public QueryPlanner(Collection<Event> events) {
+    this(new EventStore(events));
+  }
+
+  /**
+   * Creates a planner over the events of a store, including the ones added to it later.
+   *
+   * @param store the store of the scheduled events. Must be non-null.
+   */
+  public QueryPlanner(EventStore store) {
+    if (store == null) {
+      throw new IllegalArgumentException("store cannot be null.");
+    }
+
+    this.store = store;
+    store.subscribe(this::gather);
+  }
+
+  /**
+   * Returns the number of events the planner answers queries over.
+   */
+  public synchronized long getEventCount() {
+    return eventCount;
+  }
+
+  /**
+   * Picks the strategy for a request, without running it.
+   */
+  public synchronized Strategy plan(MeetingRequest request) {
+    if (eventCount >= LARGE_EVENT_COUNT) {
+      return Strategy.FREE_LISTS;
+    }
+
+    int requested = request.getAttendees().size() + request.getOptionalAttendees().size();
+    return requested * eventsPerAttendee() >= DENSE_EVENT_ESTIMATE ?
+           Strategy.MINUTE_BITMAP : Strategy.INTERVAL_SWEEP;
+  }
+
+  /**
+   * Finds all available time slots for a meeting, with the strategy picked by {@code plan}.
+   *
+   * @throws IllegalArgumentException if the request is null.
+   */
+  public Collection<TimeRange> query(MeetingRequest request) throws IllegalArgumentException {
+    return query(request, null);
+  }
+
+  /**
+   * Finds all available time slots for a meeting, with the given strategy. The answer is the
+   * same whatever the strategy, only the cost differs.
+   *
+   * @param request provides the Meeting object, along with the attendees list.
+   * @param strategy the strategy to use, or null to let the planner choose.
+   * @throws IllegalArgumentException if the request is null.
+   */
+  public Collection<TimeRange> query(MeetingRequest request, Strategy strategy)
+                                   throws IllegalArgumentException {
+    if (request == null) {
+      throw new IllegalArgumentException("No query argument should be null");
+    }
+
+    boolean forced = strategy != null;
+    if (!forced) {
+      strategy = plan(request);
+    }
+
+    synchronized (this) {
+      logger.info(String.format("%s strategy %s: %d attendees, %d events, %d people, "
+                                    + "%.1f events per person",
+                                forced ? "Forced" : "Planned", strategy,
+                                request.getAttendees().size()
+                                    + request.getOptionalAttendees().size(),
+                                eventCount, attendees.size(), eventsPerAttendee()));
+    }
+
+    TimeTablePair timeTablePair;
+    switch (strategy) {
+      case MINUTE_BITMAP:
+        timeTablePair = FreeTimeTables.fromMinuteBitmaps(store.stream().iterator(),
+                                                         request.getAttendees(),
+                                                         request.getOptionalAttendees());
+        break;
+      case FREE_LISTS:
+        timeTablePair = freeLists().timeTables(request.getAttendees(),
+                                               request.getOptionalAttendees());
+        break;
+      case SHARDED:
+        return shardedCalendar().query(request);
+      default:
+        timeTablePair = findMeetingQuery.registerRelevantEvents(store.stream().iterator(),
+                                                                request.getAttendees(),
+                                                                request.getOptionalAttendees());
+    }
+
+    return findMeetingQuery.answer(timeTablePair, request.getDuration());
+  }
+
+  private AttendeeFreeLists freeLists() {
+    AttendeeFreeLists current = freeLists;
+
+    if (current == null) {
+      synchronized (indexLock) {
+        current = freeLists;
+        if (current == null) {
+          AttendeeFreeLists created = new AttendeeFreeLists(Collections.<Event>emptyIterator());
+          store.subscribe(batch -> created.add(batch.iterator()));
+          current = created;
+          freeLists = current;
+        }
+      }
+    }
+
+    return current;
+  }
+
+  private ShardedCalendar shardedCalendar() {
+    ShardedCalendar current = shardedCalendar;
+
+    if (current == null) {
+      synchronized (indexLock) {
+        current = shardedCalendar;
+        if (current == null) {
+          current = new ShardedCalendar();
+          current.follow(store);
+          shardedCalendar = current;
+        }
+      }
+    }
+
+    return current;
+  }
+
+  private synchronized void gather(final List<Event> batch) {
+    for (Event event : batch) {
+      attendees.addAll(event.getAttendees());
+      memberships += event.getAttendees().size();
+    }
+    eventCount += batch.size();
+  }
+
+  /**
+   * Returns how fragmented an average attendee's day is.
+   */
+  private double eventsPerAttendee() {
+    return attendees.isEmpty() ? 0 : (double) memberships / attendees.size();
+  }
+}
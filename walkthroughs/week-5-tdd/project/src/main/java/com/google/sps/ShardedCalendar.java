@@ -0,0 +1,192 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A calendar partitioned by attendee hash into shards. Queries are answered by scatter-gather:
+ * every shard owning a requested attendee computes the union of their busy time, and the
+ * unions are merged into the free timetables {@code FindMeetingQuery} searches.
+ */
+public final class ShardedCalendar implements AutoCloseable {
+  private final Partitioner partitioner;
+  private final List<CalendarShard> shards = new ArrayList<>();
+  private final FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+
+  /**
+   * Decides which shard owns an attendee.
+   */
+  public static final class Partitioner {
+    private final int shardCount;
+
+    public Partitioner(int shardCount) {
+      if (shardCount <= 0) {
+        throw new IllegalArgumentException("There must be at least one shard");
+      }
+
+      this.shardCount = shardCount;
+    }
+
+    public int getShardCount() {
+      return shardCount;
+    }
+
+    public int shardOf(String attendee) {
+      return Math.floorMod(attendee.hashCode(), shardCount);
+    }
+  }
+
+  /**
+   * Creates a calendar with one in-process shard per available core.
+   */
+  public ShardedCalendar() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a calendar with {@code shardCount} in-process shards, each with its own thread.
+   */
+  public ShardedCalendar(int shardCount) {
+    partitioner = new Partitioner(shardCount);
+
+    for (int i = 0; i < shardCount; ++i) {
+      shards.add(new LocalCalendarShard(partitioner, i));
+    }
+  }
+
+  /**
+   * Creates a calendar over existing shards, e.g. ones running in other processes. The
+   * {@code i}th shard must own the attendees {@code partitioner} maps to {@code i}.
+   */
+  public ShardedCalendar(Partitioner partitioner, List<CalendarShard> shards) {
+    if (partitioner.getShardCount() != shards.size()) {
+      throw new IllegalArgumentException("There must be exactly one shard per partition");
+    }
+
+    this.partitioner = partitioner;
+    this.shards.addAll(shards);
+  }
+
+  /**
+   * Adds the events of a store to the calendar, first the ones already in it, then every batch
+   * added to it later, as soon as it is added.
+   */
+  public void follow(EventStore store) {
+    store.subscribe(this::addAll);
+  }
+
+  /**
+   * Adds a batch of events, sending every event to each shard owning one of its attendees.
+   * Returns once every shard has indexed its part.
+   */
+  public void addAll(Collection<Event> events) {
+    List<List<Event>> batches = new ArrayList<>();
+    for (int i = 0; i < shards.size(); ++i) {
+      batches.add(new ArrayList<Event>());
+    }
+
+    boolean[] sentTo = new boolean[shards.size()];
+    for (Event event : events) {
+      for (String person : event.getAttendees()) {
+        int shardIdx = partitioner.shardOf(person);
+
+        if (!sentTo[shardIdx]) {
+          sentTo[shardIdx] = true;
+          batches.get(shardIdx).add(event);
+        }
+      }
+      Arrays.fill(sentTo, false);
+    }
+
+    List<CompletableFuture<Void>> pending = new ArrayList<>();
+    for (int i = 0; i < shards.size(); ++i) {
+      if (!batches.get(i).isEmpty()) {
+        pending.add(shards.get(i).addAll(batches.get(i)));
+      }
+    }
+
+    CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+  }
+
+  /**
+   * Finds all available time slots for a meeting, with the same semantics as
+   * {@code FindMeetingQuery.query}.
+   *
+   * @throws IllegalArgumentException if the request is null.
+   */
+  public Collection<TimeRange> query(MeetingRequest request) throws IllegalArgumentException {
+    if (request == null) {
+      throw new IllegalArgumentException("No query argument should be null");
+    }
+
+    // Scatter: one busy union per shard and kind of attendee, all running concurrently.
+    List<CompletableFuture<List<TimeRange>>> mandatoryBusy = scatter(request.getAttendees());
+    List<CompletableFuture<List<TimeRange>>> optionalBusy =
+        scatter(request.getOptionalAttendees());
+
+    // Gather: merge the per-shard unions into the two free timetables.
+    List<TimeRange> busy = FreeTimeTables.mergeBusy(gather(mandatoryBusy));
+    List<TimeRange> busyWithOptional = gather(optionalBusy);
+    busyWithOptional.addAll(busy);
+    busyWithOptional = FreeTimeTables.mergeBusy(busyWithOptional);
+
+    return findMeetingQuery.answer(
+        new TimeTablePair(FreeTimeTables.complement(busy),
+                          FreeTimeTables.complement(busyWithOptional)),
+        request.getDuration());
+  }
+
+  @Override
+  public void close() {
+    for (CalendarShard shard : shards) {
+      shard.close();
+    }
+  }
+
+  private List<CompletableFuture<List<TimeRange>>> scatter(final Collection<String> attendees) {
+    List<List<String>> byShard = new ArrayList<>();
+    for (int i = 0; i < shards.size(); ++i) {
+      byShard.add(new ArrayList<String>());
+    }
+
+    for (String person : attendees) {
+      byShard.get(partitioner.shardOf(person)).add(person);
+    }
+
+    List<CompletableFuture<List<TimeRange>>> unions = new ArrayList<>();
+    for (int i = 0; i < shards.size(); ++i) {
+      if (!byShard.get(i).isEmpty()) {
+        unions.add(shards.get(i).busyUnion(byShard.get(i)));
+      }
+    }
+
+    return unions;
+  }
+
+  private List<TimeRange> gather(final List<CompletableFuture<List<TimeRange>>> unions) {
+    List<TimeRange> busy = new ArrayList<>();
+
+    for (CompletableFuture<List<TimeRange>> union : unions) {
+      busy.addAll(union.join());
+    }
+
+    return busy;
+  }
+}
@@ -0,0 +1,394 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Picks the single best slot for a meeting, according to the soft preferences of its
+ * {@code MeetingRequest}. Mandatory attendees stay a hard constraint; on top of that, a slot
+ * earns the weight of every optional attendee that can make it and a bonus for falling into a
+ * preferred window, and loses points for a busy lunch break or for back-to-back meetings.
+ *
+ * The search is a best-first branch-and-bound over ranges of start times, seeded with the free
+ * gaps of the mandatory attendees. Every range gets an optimistic bound from what is busy
+ * during all of its placements, and ranges that can't beat the best slot found so far are
+ * dropped unexplored. Only the start times where the score can change are ever scored.
+ */
+public final class SlotOptimizer {
+  public static final TimeRange LUNCH =
+      TimeRange.fromStartEnd(TimeRange.getTimeInMinutes(12, 0),
+                             TimeRange.getTimeInMinutes(13, 0), false);
+
+  // Minutes to keep between the meeting and another one of an attendee to avoid back-to-back.
+  public static final int BACK_TO_BACK_BUFFER = 15;
+
+  // Earned by a meeting that falls entirely into preferred windows, pro rata otherwise.
+  static final double PREFERRED_WINDOW_BONUS = 1;
+  // Lost for every attendee with a meeting right before or after, times its weight.
+  static final double BACK_TO_BACK_PENALTY = 0.5;
+  static final double LUNCH_PENALTY = 1;
+
+  // Ranges with at most this many candidate start times are scored instead of being split.
+  static final int LEAF_CANDIDATES = 8;
+
+  private static final Comparator<StartRange> MOST_PROMISING_FIRST =
+      new Comparator<StartRange>() {
+    @Override
+    public int compare(StartRange a, StartRange b) {
+      int byBound = Double.compare(b.bound, a.bound);
+      return byBound != 0 ? byBound : Integer.compare(a.low, b.low);
+    }
+  };
+
+  /**
+   * Returns the best-scoring slot for the meeting, the earliest one on ties, or null if the
+   * mandatory attendees have no slot long enough.
+   *
+   * @param events all the scheduled events, consumed in a single pass. Cannot be null.
+   * @param request the meeting request, along with its soft preferences. Cannot be null.
+   * @throws IllegalArgumentException if any of the arguments is null.
+   */
+  public TimeRange findBestSlot(Collection<Event> events, MeetingRequest request)
+                                throws IllegalArgumentException {
+    if (events == null || request == null) {
+      throw new IllegalArgumentException("No query argument should be null");
+    }
+
+    return findBestSlot(events.iterator(), request);
+  }
+
+  /**
+   * This method is the {@code Stream} counterpart of {@code findBestSlot}. The stream is
+   * consumed sequentially and is not closed by this method.
+   *
+   * @throws IllegalArgumentException if any of the arguments is null.
+   */
+  public TimeRange findBestSlot(Stream<Event> events, MeetingRequest request)
+                                throws IllegalArgumentException {
+    if (events == null || request == null) {
+      throw new IllegalArgumentException("No query argument should be null");
+    }
+
+    return findBestSlot(events.iterator(), request);
+  }
+
+  private TimeRange findBestSlot(final Iterator<Event> events, final MeetingRequest request) {
+    Set<String> requested = new HashSet<>(request.getAttendees());
+    requested.addAll(request.getOptionalAttendees());
+
+    // Only the busy ranges of the requested attendees are ever looked at.
+    List<Event> relevant = new ArrayList<>();
+    while (events.hasNext()) {
+      Event event = events.next();
+      for (String person : event.getAttendees()) {
+        if (requested.contains(person)) {
+          relevant.add(event);
+          break;
+        }
+      }
+    }
+
+    AttendeeFreeLists freeLists = new AttendeeFreeLists(relevant.iterator());
+    List<TimeRange> gaps =
+        freeLists.timeTables(request.getAttendees(), request.getOptionalAttendees()).getFirst();
+
+    return findBestSlot(new Scorer(request, freeLists), gaps, request.getDuration());
+  }
+
+  /**
+   * Runs the branch-and-bound over the given free gaps of the mandatory attendees.
+   */
+  TimeRange findBestSlot(final Scorer scorer, final List<TimeRange> gaps, final long duration) {
+    if (duration > TimeRange.WHOLE_DAY.duration()) {
+      return null;
+    }
+
+    PriorityQueue<StartRange> ranges = new PriorityQueue<>(MOST_PROMISING_FIRST);
+    for (TimeRange gap : gaps) {
+      if (gap.duration() >= duration) {
+        int low = gap.start();
+        int high = Math.min(gap.end() - (int) duration, TimeRange.END_OF_DAY);
+        ranges.add(new StartRange(low, high, scorer.bound(low, high)));
+      }
+    }
+
+    double bestScore = Double.NEGATIVE_INFINITY;
+    int bestStart = -1;
+
+    while (!ranges.isEmpty()) {
+      StartRange range = ranges.poll();
+
+      // Ranges come most promising first, so none of the remaining ones can do better.
+      if (range.bound < bestScore || (range.bound == bestScore && range.low > bestStart)) {
+        break;
+      }
+
+      int[] candidates = scorer.candidates(range.low, range.high);
+
+      if (candidates.length <= LEAF_CANDIDATES) {
+        for (int start : candidates) {
+          double score = scorer.score(start);
+          if (score > bestScore || (score == bestScore && start < bestStart)) {
+            bestScore = score;
+            bestStart = start;
+          }
+        }
+        continue;
+      }
+
+      // Split at the middle candidate, so both halves shrink whatever the spacing.
+      int middle = candidates[candidates.length / 2];
+      for (StartRange half : new StartRange[] {
+               new StartRange(range.low, middle - 1, scorer.bound(range.low, middle - 1)),
+               new StartRange(middle, range.high, scorer.bound(middle, range.high))}) {
+        if (half.bound >= bestScore) {
+          ranges.add(half);
+        }
+      }
+    }
+
+    return bestStart < 0 ? null : TimeRange.fromStartDuration(bestStart, (int) duration);
+  }
+
+  /**
+   * An inclusive range of start times, with an upper bound on the score of any of them.
+   */
+  private static final class StartRange {
+    private final int low;
+    private final int high;
+    private final double bound;
+
+    StartRange(final int low, final int high, final double bound) {
+      this.low = low;
+      this.high = high;
+      this.bound = bound;
+    }
+  }
+
+  /**
+   * Scores the start times of one request, and bounds the scores of ranges of them.
+   *
+   * Every term of the score is either a step function of the start time, or a continuous,
+   * piecewise linear one, so its maximum over any range is reached at the range ends, at a step
+   * or at a kink. These change points are computed once, and are the only candidates scored.
+   */
+  static final class Scorer {
+    private final MeetingRequest request;
+    // The soft terms use at least one minute, so a zero-length meeting still has a position.
+    private final int length;
+    private final List<List<TimeRange>> optionalBusy = new ArrayList<>();
+    private final List<Double> optionalWeights = new ArrayList<>();
+    private final List<List<TimeRange>> backToBackBusy = new ArrayList<>();
+    private final List<Double> backToBackWeights = new ArrayList<>();
+    private final List<TimeRange> windows;
+    private final int[] changePoints;
+    // The number of start times scored so far.
+    private int scored;
+
+    Scorer(final MeetingRequest request, final AttendeeFreeLists freeLists) {
+      this.request = request;
+      this.length = (int) Math.max(Math.min(request.getDuration(),
+                                            TimeRange.WHOLE_DAY.duration()), 1);
+      this.windows = FreeTimeTables.mergeBusy(request.getPreferredWindows());
+
+      List<Integer> points = new ArrayList<>();
+
+      for (String person : request.getOptionalAttendees()) {
+        double weight = request.getAttendeeWeight(person);
+        if (weight > 0) {
+          optionalBusy.add(freeLists.busy(person));
+          optionalWeights.add(weight);
+          for (TimeRange busy : freeLists.busy(person)) {
+            addStep(points, busy.start() - length + 1);
+            addStep(points, busy.end());
+          }
+        }
+      }
+
+      if (request.avoidsBackToBack()) {
+        Set<String> requested = new HashSet<>(request.getAttendees());
+        requested.addAll(request.getOptionalAttendees());
+
+        for (String person : requested) {
+          double weight = request.getAttendeeWeight(person);
+          if (weight > 0) {
+            backToBackBusy.add(freeLists.busy(person));
+            backToBackWeights.add(weight);
+            for (TimeRange busy : freeLists.busy(person)) {
+              // Busy within the buffer before the meeting, then within the one after it.
+              addStep(points, busy.start() + 1);
+              addStep(points, busy.end() + BACK_TO_BACK_BUFFER);
+              addStep(points, busy.start() - length - BACK_TO_BACK_BUFFER + 1);
+              addStep(points, busy.end() - length);
+            }
+          }
+        }
+      }
+
+      if (request.keepsLunchFree()) {
+        addStep(points, LUNCH.start() - length + 1);
+        addStep(points, LUNCH.end());
+      }
+
+      for (TimeRange window : windows) {
+        points.add(window.start() - length);
+        points.add(window.start());
+        points.add(window.end() - length);
+        points.add(window.end());
+      }
+
+      changePoints = points.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+    }
+
+    /**
+     * Returns, sorted, the start times of {@code [low, high]} the maximum score can be at.
+     */
+    int[] candidates(final int low, final int high) {
+      if (low == high) {
+        return new int[] {low};
+      }
+
+      int from = lowerBound(changePoints, low + 1);
+      int to = lowerBound(changePoints, high);
+      int[] candidates = new int[to - from + 2];
+
+      candidates[0] = low;
+      System.arraycopy(changePoints, from, candidates, 1, to - from);
+      candidates[candidates.length - 1] = high;
+
+      return candidates;
+    }
+
+    /**
+     * Returns the score of the meeting starting at {@code start}.
+     */
+    double score(final int start) {
+      ++scored;
+      int end = start + length;
+      double score = 0;
+
+      for (int i = 0; i < optionalBusy.size(); ++i) {
+        if (!overlapsAny(optionalBusy.get(i), start, end)) {
+          score += optionalWeights.get(i);
+        }
+      }
+
+      score += PREFERRED_WINDOW_BONUS * windowMinutes(start, end) / length;
+
+      if (request.keepsLunchFree() && start < LUNCH.end() && end > LUNCH.start()) {
+        score -= LUNCH_PENALTY;
+      }
+
+      for (int i = 0; i < backToBackBusy.size(); ++i) {
+        if (overlapsAny(backToBackBusy.get(i), start - BACK_TO_BACK_BUFFER, start) ||
+            overlapsAny(backToBackBusy.get(i), end, end + BACK_TO_BACK_BUFFER)) {
+          score -= BACK_TO_BACK_PENALTY * backToBackWeights.get(i);
+        }
+      }
+
+      return score;
+    }
+
+    /**
+     * Returns an upper bound on the score of any start time in {@code [low, high]}. Whatever
+     * overlaps the minutes every placement covers is certain to cost; anything else is assumed
+     * to go the meeting's way.
+     */
+    double bound(final int low, final int high) {
+      int coreStart = high;
+      int coreEnd = low + length;
+      boolean hasCore = coreStart < coreEnd;
+      double bound = 0;
+
+      for (int i = 0; i < optionalBusy.size(); ++i) {
+        if (!hasCore || !overlapsAny(optionalBusy.get(i), coreStart, coreEnd)) {
+          bound += optionalWeights.get(i);
+        }
+      }
+
+      bound += PREFERRED_WINDOW_BONUS *
+               Math.min(length, windowMinutes(low, high + length)) / length;
+
+      if (request.keepsLunchFree() && hasCore && coreStart < LUNCH.end() &&
+          coreEnd > LUNCH.start()) {
+        bound -= LUNCH_PENALTY;
+      }
+
+      return bound;
+    }
+
+    int getScoredCount() {
+      return scored;
+    }
+
+    private int windowMinutes(final int start, final int end) {
+      int minutes = 0;
+
+      for (TimeRange window : windows) {
+        minutes += Math.max(0, Math.min(end, window.end()) - Math.max(start, window.start()));
+      }
+
+      return minutes;
+    }
+
+    /**
+     * Steps are at the first start time of a new constant piece, so the last start time of the
+     * previous piece is a candidate as well, for the linear terms to peak at.
+     */
+    private static void addStep(final List<Integer> points, final int point) {
+      points.add(point - 1);
+      points.add(point);
+    }
+
+    /**
+     * Checks if any of the sorted and disjoint ranges overlaps [start, end).
+     */
+    private static boolean overlapsAny(final List<TimeRange> busy, final int start,
+                                       final int end) {
+      int low = 0;
+      int high = busy.size();
+
+      // Find the first range ending after start.
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (busy.get(middle).end() <= start) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+
+      return low < busy.size() && busy.get(low).start() < end;
+    }
+
+    /**
+     * Returns the index of the first value not smaller than {@code key}.
+     */
+    private static int lowerBound(final int[] values, final int key) {
+      int index = Arrays.binarySearch(values, key);
+      return index >= 0 ? index : -index - 1;
+    }
+  }
+}
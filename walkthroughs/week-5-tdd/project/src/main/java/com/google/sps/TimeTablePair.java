@@ -0,0 +1,39 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.List;
+
+/**
+ * The two free timetables of a request: the first one for the mandatory attendees only, the
+ * second one for the mandatory and optional attendees together.
+ */
+final class TimeTablePair {
+  private List<TimeRange> first;
+  private List<TimeRange> second;
+
+  TimeTablePair(final List<TimeRange> first, final List<TimeRange> second) {
+    this.first = first;
+    this.second = second;
+  }
+
+  List<TimeRange> getFirst() {
+    return first;
+  }
+
+  List<TimeRange> getSecond() {
+    return second;
+  }
+}
@@ -14,9 +14,12 @@
 
 package com.google.sps.servlets;
 
-import com.google.sps.Events;
+import com.google.sps.Event;
+import com.google.sps.EventStore;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import java.io.IOException;
+import java.util.Iterator;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -27,10 +30,16 @@ public class GetEventsServlet extends HttpServlet {
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     Gson gson = new Gson();
-    String jsonResponse = gson.toJson(Events.events);
 
-    // Send the JSON back as the response
+    // Send the JSON back as the response, one event at a time, since the store can be large.
     response.setContentType("application/json");
-    response.getWriter().println(jsonResponse);
+    JsonWriter writer = gson.newJsonWriter(response.getWriter());
+    writer.beginArray();
+    for (Iterator<Event> events = EventStore.getInstance().stream().iterator();
+         events.hasNext(); ) {
+      gson.toJson(events.next(), Event.class, writer);
+    }
+    writer.endArray();
+    writer.flush();
   }
 }
@@ -0,0 +1,50 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.EventImporter;
+import com.google.sps.EventStore;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.util.Collections;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Bulk-imports a calendar export, posted as the request body, into the event store. The format
+ * is given by the {@code format} parameter, either "csv" or "ics". The body is parsed as it
+ * arrives, never held whole in memory.
+ */
+@WebServlet("/import")
+public class ImportServlet extends HttpServlet {
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    long imported;
+    try {
+      EventImporter.Format format = EventImporter.Format.fromName(request.getParameter("format"));
+      imported = EventImporter.importEvents(request.getReader(), format, EventStore.getInstance(),
+                                            EventImporter.DEFAULT_BATCH_SIZE);
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    }
+
+    // Send the number of imported events back as the response
+    response.setContentType("application/json");
+    response.getWriter().println(new Gson().toJson(Collections.singletonMap("imported", imported)));
+  }
+}
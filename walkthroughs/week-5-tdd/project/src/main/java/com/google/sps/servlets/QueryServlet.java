@@ -14,14 +14,21 @@
 
 package com.google.sps.servlets;
 
-import com.google.sps.Events;
+import com.google.sps.ConflictExplanation;
+import com.google.sps.EventStore;
 import com.google.sps.FindMeetingQuery;
 import com.google.sps.MeetingRequest;
+import com.google.sps.MultiDurationMeetingRequest;
+import com.google.sps.QueryPlanner;
+import com.google.sps.SlotOptimizer;
 import com.google.sps.TimeRange;
 import com.google.gson.Gson;
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -29,17 +36,86 @@ import javax.servlet.http.HttpServletResponse;
 
 @WebServlet("/query")
 public class QueryServlet extends HttpServlet {
+  private static final String START_TIMES_MODE = "start-times";
+  private static final String MULTI_DURATION_MODE = "multi-duration";
+  private static final String BEST_SLOT_MODE = "best-slot";
+  private static final int DEFAULT_GRANULARITY = 15;
+  private static final int DEFAULT_PAGE_SIZE = 10;
+  private static final int MAX_PAGE_SIZE = 100;
+
+  // Follows the shared store, so its statistics stay current without rereading the events.
+  private static final QueryPlanner planner = new QueryPlanner(EventStore.getInstance());
+
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
     Gson gson = new Gson();
+    FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+
+    if (MULTI_DURATION_MODE.equals(request.getParameter("mode"))) {
+      MultiDurationMeetingRequest multiDurationRequest =
+          gson.fromJson(request.getReader(), MultiDurationMeetingRequest.class);
+
+      // Find the possible meeting times for every duration at once.
+      Map<Long, Collection<TimeRange>> answers =
+          findMeetingQuery.query(EventStore.getInstance().stream(), multiDurationRequest);
+
+      response.setContentType("application/json");
+      response.getWriter().println(gson.toJson(answers));
+      return;
+    }
 
     // Convert the JSON to an instance of MeetingRequest.
     MeetingRequest meetingRequest = gson.fromJson(request.getReader(), MeetingRequest.class);
 
     // Find the possible meeting times.
-    FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
-    Collection<TimeRange> answer =
-        findMeetingQuery.query(Arrays.asList(Events.events), meetingRequest);
+    Object answer;
+
+    if (BEST_SLOT_MODE.equals(request.getParameter("mode"))) {
+      // The single slot that best suits the soft preferences, or null if there is none.
+      answer = new SlotOptimizer().findBestSlot(EventStore.getInstance().stream(),
+                                                meetingRequest);
+    } else if (START_TIMES_MODE.equals(request.getParameter("mode"))) {
+      int granularity;
+      int cursor;
+      int pageSize;
+      try {
+        granularity = parseParameter(request, "granularity", DEFAULT_GRANULARITY);
+        cursor = parseParameter(request, "cursor", TimeRange.START_OF_DAY);
+        pageSize = Math.min(parseParameter(request, "pageSize", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+      } catch (NumberFormatException e) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Malformed pagination parameter");
+        return;
+      }
+
+      if (granularity <= 0 || pageSize <= 0) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Malformed pagination parameter");
+        return;
+      }
+
+      answer = nextPage(findMeetingQuery.queryStartTimes(EventStore.getInstance().stream(),
+                                                         meetingRequest, granularity, cursor),
+                        pageSize);
+    } else {
+      QueryPlanner.Strategy strategy;
+      try {
+        String forced = request.getParameter("strategy");
+        strategy = forced == null ? null : QueryPlanner.Strategy.valueOf(forced.toUpperCase());
+      } catch (IllegalArgumentException e) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown strategy");
+        return;
+      }
+
+      Collection<TimeRange> options = planner.query(meetingRequest, strategy);
+
+      if (Boolean.parseBoolean(request.getParameter("explain"))) {
+        // Explaining is only worth it when there is nothing else to show.
+        answer = new ExplainedAnswer(options, options.isEmpty() ?
+            findMeetingQuery.explainConflicts(EventStore.getInstance().stream(), meetingRequest) :
+            null);
+      } else {
+        answer = options;
+      }
+    }
 
     // Convert the times to JSON
     String jsonResponse = gson.toJson(answer);
@@ -48,4 +124,46 @@ public class QueryServlet extends HttpServlet {
     response.setContentType("application/json");
     response.getWriter().println(jsonResponse);
   }
+
+  /**
+   * Pulls at most {@code pageSize} start times out of the iterator. The cursor of the next page
+   * is the start time that would come next, or absent when there are no more start times.
+   */
+  private StartTimesPage nextPage(final PrimitiveIterator.OfInt startTimes, final int pageSize) {
+    StartTimesPage page = new StartTimesPage();
+
+    while (page.startTimes.size() < pageSize && startTimes.hasNext()) {
+      page.startTimes.add(startTimes.nextInt());
+    }
+
+    if (startTimes.hasNext()) {
+      page.nextCursor = startTimes.nextInt();
+    }
+
+    return page;
+  }
+
+  private int parseParameter(final HttpServletRequest request, final String name,
+                             final int defaultValue) throws NumberFormatException {
+    String value = request.getParameter(name);
+
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  /** The available options, along with the reason why there are none, if that's the case. */
+  private static final class ExplainedAnswer {
+    private final Collection<TimeRange> options;
+    private final ConflictExplanation explanation;
+
+    ExplainedAnswer(final Collection<TimeRange> options, final ConflictExplanation explanation) {
+      this.options = options;
+      this.explanation = explanation;
+    }
+  }
+
+  /** One page of start times, as it is sent back to the client. */
+  private static final class StartTimesPage {
+    private final List<Integer> startTimes = new ArrayList<>();
+    private Integer nextCursor;
+  }
 }
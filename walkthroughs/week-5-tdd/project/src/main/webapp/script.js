@@ -96,6 +96,10 @@ class MeetingRequest {
     this.duration = duration;
     this.attendees = attendees;
     this.optional_attendees = optional_attendees;
+    this.preferred_windows = [];
+    this.avoid_back_to_back = false;
+    this.keep_lunch_free = false;
+    this.attendee_weights = {};
   }
 }
 
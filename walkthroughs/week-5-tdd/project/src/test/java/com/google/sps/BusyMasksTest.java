@@ -0,0 +1,53 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.BitSet;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class BusyMasksTest {
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+
+  @Test
+  public void marksOnlyTheGivenDay() {
+    long[] mask = new long[2 * BusyMasks.WORDS_PER_DAY];
+    BusyMasks.markBusy(mask, 1, TimeRange.fromStartEnd(TIME_0900AM, TIME_1000AM, false));
+
+    BitSet expected = new BitSet();
+    int dayBit = BusyMasks.WORDS_PER_DAY * 64;
+    expected.set(dayBit + TIME_0900AM, dayBit + TIME_1000AM);
+    Assert.assertEquals(expected, BitSet.valueOf(mask));
+  }
+
+  @Test
+  public void wholeDayStaysWithinItsWords() {
+    long[] mask = new long[2 * BusyMasks.WORDS_PER_DAY];
+    BusyMasks.markBusy(mask, 0, TimeRange.WHOLE_DAY);
+
+    BitSet expected = new BitSet();
+    expected.set(0, TimeRange.WHOLE_DAY.duration());
+    Assert.assertEquals(expected, BitSet.valueOf(mask));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void dayOutsideTheHorizon() {
+    BusyMasks.markBusy(new long[BusyMasks.WORDS_PER_DAY], 1, TimeRange.WHOLE_DAY);
+  }
+}
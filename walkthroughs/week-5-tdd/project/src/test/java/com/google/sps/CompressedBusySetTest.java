@@ -0,0 +1,153 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class CompressedBusySetTest {
+  private static final int DAY = CompressedBusySet.MINUTES_PER_DAY;
+  private static final int YEAR = 365 * DAY;
+
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+  private static final int TIME_1100AM = TimeRange.getTimeInMinutes(11, 0);
+  private static final int TIME_0500PM = TimeRange.getTimeInMinutes(17, 0);
+
+  @Test
+  public void builderMergesOverlappingAndTouchingRanges() {
+    CompressedBusySet busy = CompressedBusySet.builder()
+        .add(3, TimeRange.fromStartEnd(TIME_1000AM, TIME_1100AM, false))
+        .add(3, TimeRange.fromStartEnd(TIME_0900AM, TIME_1000AM, false))
+        .add(3, TimeRange.fromStartEnd(TIME_0900AM + 30, TIME_1000AM, false))
+        .build();
+
+    Assert.assertEquals(1, busy.runCount());
+    Assert.assertEquals(TIME_1100AM - TIME_0900AM, busy.busyMinutes());
+    Assert.assertTrue(busy.isBusy(3 * DAY + TIME_0900AM));
+    Assert.assertFalse(busy.isBusy(3 * DAY + TIME_1100AM));
+    Assert.assertEquals(Arrays.asList(
+        TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0900AM, false),
+        TimeRange.fromStartEnd(TIME_1100AM, TimeRange.END_OF_DAY, true)),
+        busy.freeSlots(3));
+    Assert.assertEquals(Arrays.asList(TimeRange.WHOLE_DAY), busy.freeSlots(2));
+  }
+
+  @Test
+  public void unionAndIntersection() {
+    CompressedBusySet first = CompressedBusySet.builder()
+        .add(0, TimeRange.fromStartEnd(TIME_0900AM, TIME_1100AM, false))
+        .add(1, TimeRange.fromStartEnd(TIME_0900AM, TIME_1000AM, false))
+        .build();
+    CompressedBusySet second = CompressedBusySet.builder()
+        .add(0, TimeRange.fromStartEnd(TIME_1000AM, TIME_0500PM, false))
+        .add(2, TimeRange.WHOLE_DAY)
+        .build();
+
+    CompressedBusySet expectedUnion = CompressedBusySet.builder()
+        .add(0, TimeRange.fromStartEnd(TIME_0900AM, TIME_0500PM, false))
+        .add(1, TimeRange.fromStartEnd(TIME_0900AM, TIME_1000AM, false))
+        .add(2, TimeRange.WHOLE_DAY)
+        .build();
+    CompressedBusySet expectedIntersection = CompressedBusySet.builder()
+        .add(0, TimeRange.fromStartEnd(TIME_1000AM, TIME_1100AM, false))
+        .build();
+
+    Assert.assertEquals(expectedUnion, first.union(second));
+    Assert.assertEquals(expectedUnion, CompressedBusySet.unionAll(Arrays.asList(second, first)));
+    Assert.assertEquals(expectedIntersection, first.intersection(second));
+    Assert.assertEquals(CompressedBusySet.EMPTY,
+                        CompressedBusySet.unionAll(new ArrayList<CompressedBusySet>()));
+  }
+
+  @Test
+  public void firstFreeRunSpansMidnight() {
+    // Busy every day from 9 AM to 5 PM, so only the nights are free.
+    CompressedBusySet.Builder builder = CompressedBusySet.builder();
+    for (int day = 0; day < 365; ++day) {
+      builder.add(day, TimeRange.fromStartEnd(TIME_0900AM, TIME_0500PM, false));
+    }
+    CompressedBusySet busy = builder.build();
+
+    Assert.assertEquals(0, busy.firstFreeRun(0, TIME_0900AM, YEAR));
+    Assert.assertEquals(TIME_0500PM, busy.firstFreeRun(TIME_0900AM, 60, YEAR));
+    Assert.assertEquals(TIME_0500PM,
+                        busy.firstFreeRun(TIME_0900AM, DAY - (TIME_0500PM - TIME_0900AM), YEAR));
+    Assert.assertEquals(-1, busy.firstFreeRun(0, DAY, YEAR));
+    // The last night is cut short by the horizon.
+    Assert.assertEquals(-1,
+                        busy.firstFreeRun(364 * DAY + TIME_1000AM, 60, 364 * DAY + TIME_0500PM));
+  }
+
+  @Test
+  public void matchesMinuteBitmap() {
+    Random random = new Random(42);
+    int horizon = 30 * DAY;
+    CompressedBusySet.Builder firstBuilder = CompressedBusySet.builder();
+    CompressedBusySet.Builder secondBuilder = CompressedBusySet.builder();
+    BitSet first = new BitSet(horizon);
+    BitSet second = new BitSet(horizon);
+
+    for (int i = 0; i < 200; ++i) {
+      int start = random.nextInt(horizon - 240);
+      int end = start + random.nextInt(240);
+      firstBuilder.add(start, end);
+      first.set(start, end);
+
+      start = random.nextInt(horizon - 240);
+      end = start + random.nextInt(240);
+      secondBuilder.add(start, end);
+      second.set(start, end);
+    }
+
+    CompressedBusySet union = firstBuilder.build().union(secondBuilder.build());
+    CompressedBusySet intersection = firstBuilder.build().intersection(secondBuilder.build());
+    BitSet expectedUnion = (BitSet) first.clone();
+    expectedUnion.or(second);
+    BitSet expectedIntersection = (BitSet) first.clone();
+    expectedIntersection.and(second);
+
+    for (int minute = 0; minute < horizon; ++minute) {
+      Assert.assertEquals(expectedUnion.get(minute), union.isBusy(minute));
+      Assert.assertEquals(expectedIntersection.get(minute), intersection.isBusy(minute));
+    }
+    Assert.assertEquals(expectedUnion.cardinality(), union.busyMinutes());
+
+    for (int duration : new int[] {1, 30, 120, 600}) {
+      Assert.assertEquals(firstFreeRun(expectedUnion, duration, horizon),
+                          union.firstFreeRun(0, duration, horizon));
+    }
+  }
+
+  private static int firstFreeRun(BitSet busy, int duration, int horizon) {
+    for (int start = busy.nextClearBit(0); start + duration <= horizon;
+         start = busy.nextClearBit(start + 1)) {
+      int nextBusy = busy.nextSetBit(start);
+      if ((nextBusy < 0 ? horizon : nextBusy) - start >= duration) {
+        return start;
+      }
+    }
+
+    return -1;
+  }
+}
@@ -0,0 +1,113 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class EventImporterTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+
+  private static final int TIME_0830AM = TimeRange.getTimeInMinutes(8, 30);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+
+  private EventStore store;
+
+  @Before
+  public void setUp() {
+    store = new EventStore(Collections.<Event>emptyList());
+  }
+
+  @Test
+  public void importsCsvInBatches() throws IOException {
+    String csv = "title,start,end,attendees\n" +
+                 "Standup,08:30,09:00,Person A;Person B\n" +
+                 "\"Review, final\",09:00,10:00,Person A\n" +
+                 "Late,23:00,24:00,\n";
+
+    long actual = importString(csv, EventImporter.Format.CSV, 2);
+
+    Assert.assertEquals(3, actual);
+    Assert.assertEquals(Arrays.asList(
+        new Event("Standup", TimeRange.fromStartEnd(TIME_0830AM, TIME_0900AM, false),
+            Arrays.asList(PERSON_A, PERSON_B)),
+        new Event("Review, final", TimeRange.fromStartEnd(TIME_0900AM, TIME_1000AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Late", TimeRange.fromStartEnd(TimeRange.getTimeInMinutes(23, 0),
+            TimeRange.WHOLE_DAY.end(), false), Collections.<String>emptyList())),
+        storedEvents());
+  }
+
+  @Test
+  public void importsICalendar() throws IOException {
+    String ics = "BEGIN:VCALENDAR\r\n" +
+                 "BEGIN:VEVENT\r\n" +
+                 "SUMMARY:Team\\, sync\r\n" +
+                 "DTSTART;TZID=Europe/Zurich:20200101T083000\r\n" +
+                 "DTEND;TZID=Europe/Zurich:20200101T090000\r\n" +
+                 "ATTENDEE;CN=\"Person A\";ROLE=REQ-PARTICIPANT:mailto:a@example.com\r\n" +
+                 "ATTENDEE:mailto:Person\r\n" +
+                 "  B\r\n" +
+                 "END:VEVENT\r\n" +
+                 "BEGIN:VEVENT\r\n" +
+                 "SUMMARY:Offsite\r\n" +
+                 "DTSTART;VALUE=DATE:20200102\r\n" +
+                 "DTEND;VALUE=DATE:20200103\r\n" +
+                 "END:VEVENT\r\n" +
+                 "END:VCALENDAR\r\n";
+
+    long actual = importString(ics, EventImporter.Format.ICALENDAR, 1);
+
+    Assert.assertEquals(2, actual);
+    Assert.assertEquals(Arrays.asList(
+        new Event("Team, sync", TimeRange.fromStartEnd(TIME_0830AM, TIME_0900AM, false),
+            Arrays.asList(PERSON_A, PERSON_B)),
+        new Event("Offsite", TimeRange.WHOLE_DAY, Collections.<String>emptyList())),
+        storedEvents());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMalformedCsv() throws IOException {
+    importString("Standup,08:30,25:00,Person A\n", EventImporter.Format.CSV, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnclosedEvent() throws IOException {
+    importString("BEGIN:VEVENT\nDTSTART:20200101T083000\n", EventImporter.Format.ICALENDAR, 1);
+  }
+
+  private long importString(String input, EventImporter.Format format, int batchSize)
+                            throws IOException {
+    return EventImporter.importEvents(new BufferedReader(new StringReader(input)), format, store,
+                                      batchSize);
+  }
+
+  private List<Event> storedEvents() {
+    return store.stream().collect(Collectors.toList());
+  }
+}
@@ -20,6 +20,9 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.TreeSet;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -37,9 +40,12 @@ public final class FindMeetingQueryTest {
   private static final String PERSON_C = "Person C";
 
   // All dates are the first day of the year 2020.
+  private static final int TIME_0730AM = TimeRange.getTimeInMinutes(7, 30);
+  private static final int TIME_0745AM = TimeRange.getTimeInMinutes(7, 45);
   private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
   private static final int TIME_0830AM = TimeRange.getTimeInMinutes(8, 30);
   private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_0915AM = TimeRange.getTimeInMinutes(9, 15);
   private static final int TIME_0930AM = TimeRange.getTimeInMinutes(9, 30);
   private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
   private static final int TIME_1100AM = TimeRange.getTimeInMinutes(11, 00);
@@ -485,5 +491,174 @@ public final class FindMeetingQueryTest {
 
     Assert.assertEquals(expected, actual);
   }
-}
 
+  @Test
+  public void streamedEventsMatchCollection() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 3", TimeRange.fromStartDuration(TIME_1000AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_C)));
+
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_C);
+
+    Collection<TimeRange> expected = query.query(events, request);
+
+    Assert.assertEquals(expected, query.query(events.stream(), request));
+    Assert.assertEquals(expected, query.query(events.iterator(), request));
+  }
+
+  @Test
+  public void multipleDurationsMatchSingleQueries() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0900AM, DURATION_60_MINUTES),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 3", TimeRange.fromStartDuration(TIME_1100AM, DURATION_15_MINUTES),
+            Arrays.asList(PERSON_C)));
+
+    List<Long> durations = Arrays.asList((long) DURATION_90_MINUTES, (long) DURATION_15_MINUTES,
+        (long) DURATION_60_MINUTES, (long) DURATION_30_MINUTES,
+        (long) TimeRange.WHOLE_DAY.duration());
+    MultiDurationMeetingRequest request =
+        new MultiDurationMeetingRequest(Arrays.asList(PERSON_A, PERSON_B), durations);
+    request.addOptionalAttendee(PERSON_C);
+
+    Map<Long, Collection<TimeRange>> actual = query.query(events, request);
+
+    Assert.assertEquals(new TreeSet<>(durations), actual.keySet());
+    for (long duration : durations) {
+      MeetingRequest single =
+          new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), duration);
+      single.addOptionalAttendee(PERSON_C);
+
+      Assert.assertEquals(new ArrayList<>(query.query(events, single)),
+                          new ArrayList<>(actual.get(duration)));
+    }
+  }
+
+  /**
+   * Start times are aligned to the granularity and only those for which the whole meeting fits
+   * inside a free slot are returned.
+   *
+   * Events  :       |--A--|
+   * Day     : |---------------------|
+   * Options : ^  ^        ^  ^  ...
+   */
+  @Test
+  public void startTimesAreAlignedToGranularity() {
+    Collection<Event> events = Arrays.asList(new Event("Event 1",
+        TimeRange.fromStartDuration(TIME_0830AM, DURATION_30_MINUTES), Arrays.asList(PERSON_A)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+
+    PrimitiveIterator.OfInt actual =
+        query.queryStartTimes(events, request, DURATION_15_MINUTES, TIME_0730AM);
+    List<Integer> expected = Arrays.asList(TIME_0730AM, TIME_0745AM, TIME_0800AM, TIME_0900AM,
+                                           TIME_0915AM);
+
+    Assert.assertEquals(expected, take(actual, expected.size()));
+  }
+
+  @Test
+  public void startTimesResumeFromCursor() {
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_60_MINUTES);
+
+    PrimitiveIterator.OfInt actual =
+        query.queryStartTimes(NO_EVENTS, request, DURATION_30_MINUTES, TIME_0900AM + 1);
+
+    Assert.assertEquals(Arrays.asList(TIME_0930AM, TIME_1000AM), take(actual, 2));
+  }
+
+  @Test
+  public void startTimesStopAtEndOfDay() {
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_60_MINUTES);
+
+    PrimitiveIterator.OfInt actual =
+        query.queryStartTimes(NO_EVENTS, request, DURATION_30_MINUTES, TimeRange.START_OF_DAY);
+
+    List<Integer> all = take(actual, Integer.MAX_VALUE);
+    Assert.assertEquals(47, all.size());
+    Assert.assertEquals(TimeRange.WHOLE_DAY.end() - DURATION_60_MINUTES,
+                        (int) all.get(all.size() - 1));
+  }
+
+  @Test
+  public void noStartTimesForTooLongOfARequest() {
+    int duration = TimeRange.WHOLE_DAY.duration() + 1;
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), duration);
+
+    PrimitiveIterator.OfInt actual =
+        query.queryStartTimes(NO_EVENTS, request, DURATION_15_MINUTES, TimeRange.START_OF_DAY);
+
+    Assert.assertFalse(actual.hasNext());
+  }
+
+  /**
+   * Nobody can attend together. A is busy the whole morning and B the whole afternoon, while C
+   * only blocks a short range. Dropping either A or B alone is enough.
+   *
+   * Events  : |-------A-------|-------B-------|
+   *                                 |-C-|
+   * Day     : |-------------------------------|
+   */
+  @Test
+  public void explainsSmallestBlockingSetAndNearMisses() {
+    int noon = TimeRange.getTimeInMinutes(12, 0);
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, noon, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(noon, TimeRange.END_OF_DAY, true),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 3", TimeRange.fromStartDuration(noon + DURATION_60_MINUTES,
+            DURATION_60_MINUTES), Arrays.asList(PERSON_C)));
+
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B, PERSON_C), DURATION_30_MINUTES);
+
+    Assert.assertEquals(Arrays.asList(), query.query(events, request));
+
+    ConflictExplanation actual = query.explainConflicts(events, request);
+
+    Assert.assertEquals(1, actual.getBlockingAttendees().size());
+    Assert.assertEquals(Arrays.asList(
+        new ConflictExplanation.NearMiss(TimeRange.fromStartEnd(TimeRange.START_OF_DAY,
+            noon, false), Arrays.asList(PERSON_A)),
+        new ConflictExplanation.NearMiss(TimeRange.fromStartEnd(noon, noon + DURATION_60_MINUTES,
+            false), Arrays.asList(PERSON_B)),
+        new ConflictExplanation.NearMiss(TimeRange.fromStartEnd(noon + 2 * DURATION_60_MINUTES,
+            TimeRange.END_OF_DAY, true), Arrays.asList(PERSON_B)),
+        new ConflictExplanation.NearMiss(TimeRange.fromStartEnd(noon - DURATION_30_MINUTES + 1,
+            noon + DURATION_30_MINUTES - 1, false), Arrays.asList(PERSON_A, PERSON_B)),
+        new ConflictExplanation.NearMiss(TimeRange.fromStartEnd(noon + DURATION_30_MINUTES + 1,
+            noon + 2 * DURATION_60_MINUTES + DURATION_30_MINUTES - 1, false),
+            Arrays.asList(PERSON_B, PERSON_C))),
+        actual.getNearMisses());
+  }
+
+  @Test
+  public void noExplanationForTooLongOfARequest() {
+    int duration = TimeRange.WHOLE_DAY.duration() + 1;
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), duration);
+
+    ConflictExplanation actual = query.explainConflicts(NO_EVENTS, request);
+
+    Assert.assertTrue(actual.getBlockingAttendees().isEmpty());
+    Assert.assertTrue(actual.getNearMisses().isEmpty());
+  }
+
+  private static List<Integer> take(PrimitiveIterator.OfInt iterator, int count) {
+    List<Integer> result = new ArrayList<>();
+
+    while (result.size() < count && iterator.hasNext()) {
+      result.add(iterator.nextInt());
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,118 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class GroupAvailabilityRegistryTest {
+  private static final String TEAM = "Team";
+
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0830AM = TimeRange.getTimeInMinutes(8, 30);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+
+  private static final Event EVENT_A = new Event("Event 1",
+      TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false), Arrays.asList(PERSON_A));
+  private static final Event EVENT_AB = new Event("Event 2",
+      TimeRange.fromStartEnd(TIME_0830AM, TIME_1000AM, false), Arrays.asList(PERSON_A, PERSON_B));
+
+  @Test
+  public void groupFollowsStore() {
+    EventStore store = new EventStore(Arrays.asList(EVENT_A));
+    GroupAvailabilityRegistry registry = GroupAvailabilityRegistry.watching(store);
+    registry.defineGroup(TEAM, Arrays.asList(PERSON_A, PERSON_B));
+
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false)),
+                        registry.getGroupBusy(TEAM));
+
+    store.addAll(Arrays.asList(EVENT_AB));
+
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(TIME_0800AM, TIME_1000AM, false)),
+                        registry.getGroupBusy(TEAM));
+  }
+
+  @Test
+  public void removingAnEventKeepsOverlappingOnes() {
+    GroupAvailabilityRegistry registry = new GroupAvailabilityRegistry();
+    registry.defineGroup(TEAM, Arrays.asList(PERSON_A, PERSON_B));
+    registry.addEvents(Arrays.asList(EVENT_A, EVENT_AB));
+
+    registry.removeEvents(Arrays.asList(EVENT_A));
+
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(TIME_0830AM, TIME_1000AM, false)),
+                        registry.getGroupBusy(TEAM));
+
+    registry.removeEvents(Arrays.asList(EVENT_AB));
+
+    Assert.assertEquals(Collections.emptyList(), registry.getGroupBusy(TEAM));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownGroup() {
+    new GroupAvailabilityRegistry().getGroupBusy(TEAM);
+  }
+
+  @Test
+  public void matchesQueryOverEvents() {
+    Random random = new Random(42);
+    List<String> people = new ArrayList<>();
+    for (int i = 0; i < 10; ++i) {
+      people.add("Person " + i);
+    }
+
+    List<Event> events = new ArrayList<>();
+    for (int i = 0; i < 40; ++i) {
+      int start = random.nextInt(TimeRange.WHOLE_DAY.duration() - 60);
+      events.add(new Event("Event " + i, TimeRange.fromStartDuration(start, 1 + random.nextInt(60)),
+                           Arrays.asList(people.get(random.nextInt(people.size())),
+                                         people.get(random.nextInt(people.size())))));
+    }
+
+    GroupAvailabilityRegistry registry = new GroupAvailabilityRegistry();
+    registry.addEvents(events.subList(0, 20));
+    registry.defineGroup(TEAM, people.subList(0, 4));
+    registry.defineGroup("Panel", people.subList(2, 7));
+    registry.addEvents(events.subList(20, events.size()));
+
+    FindMeetingQuery query = new FindMeetingQuery();
+    for (int round = 0; round < 20; ++round) {
+      List<String> shuffled = new ArrayList<>(people);
+      Collections.shuffle(shuffled, random);
+
+      List<String> attendees = new ArrayList<>(people.subList(0, 4));
+      attendees.addAll(shuffled.subList(0, random.nextInt(3)));
+      MeetingRequest request = new MeetingRequest(attendees, 15 + random.nextInt(60));
+      for (String person : shuffled.subList(3, 3 + random.nextInt(4))) {
+        request.addOptionalAttendee(person);
+      }
+
+      Assert.assertEquals(query.query(events, request), query.query(registry, request));
+    }
+  }
+}
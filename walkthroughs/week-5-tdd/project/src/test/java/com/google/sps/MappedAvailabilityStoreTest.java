@@ -0,0 +1,151 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class MappedAvailabilityStoreTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0830AM = TimeRange.getTimeInMinutes(8, 30);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+
+  private static final int DURATION_30_MINUTES = 30;
+
+  private static final Collection<Event> EVENTS = Arrays.asList(
+      new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+                Arrays.asList(PERSON_A)),
+      new Event("Event 2", TimeRange.fromStartEnd(TIME_0830AM, TIME_1000AM, false),
+                Arrays.asList(PERSON_B, PERSON_C)));
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void answersLikeEvents() throws IOException {
+    FindMeetingQuery query = new FindMeetingQuery();
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_B);
+
+    try (MappedAvailabilityStore store =
+             MappedAvailabilityStore.create(folder.newFile().toPath(), 4, 7)) {
+      store.addAll(EVENTS, 3);
+
+      Assert.assertEquals(query.query(EVENTS, request), query.query(store, 3, request));
+      Assert.assertEquals(Arrays.asList(TimeRange.WHOLE_DAY), query.query(store, 2, request));
+    }
+  }
+
+  @Test
+  public void reopenKeepsBusyTimeAndAttendees() throws IOException {
+    Path path = folder.newFile().toPath();
+
+    try (MappedAvailabilityStore store = MappedAvailabilityStore.create(path, 4, 7)) {
+      store.addAll(EVENTS, 6);
+    }
+
+    try (MappedAvailabilityStore store = MappedAvailabilityStore.open(path)) {
+      Assert.assertEquals(4, store.getMaxAttendees());
+      Assert.assertEquals(7, store.getDays());
+      Assert.assertTrue(store.isBusy(PERSON_C, 6, TIME_0900AM));
+      Assert.assertFalse(store.isBusy(PERSON_C, 5, TIME_0900AM));
+      Assert.assertFalse(store.isBusy(PERSON_A, 6, TIME_0900AM));
+      Assert.assertEquals(1, store.attendeeId(PERSON_B));
+      Assert.assertEquals(3, store.attendeeId("Person D"));
+    }
+  }
+
+  @Test
+  public void namesOutliveACrash() throws IOException {
+    Path path = folder.newFile().toPath();
+    MappedAvailabilityStore crashed = MappedAvailabilityStore.create(path, 4, 7);
+    crashed.addAll(EVENTS, 6);
+
+    // Never closed, nor forced.
+    try (MappedAvailabilityStore store = MappedAvailabilityStore.open(path)) {
+      Assert.assertEquals(1, store.attendeeId(PERSON_B));
+      Assert.assertEquals(3, store.attendeeId("Person D"));
+      Assert.assertTrue(store.isBusy(PERSON_C, 6, TIME_0900AM));
+    }
+    crashed.close();
+  }
+
+  @Test
+  public void tornNameIsCutOff() throws IOException {
+    Path path = folder.newFile().toPath();
+    try (MappedAvailabilityStore store = MappedAvailabilityStore.create(path, 4, 7)) {
+      store.attendeeId(PERSON_A);
+    }
+    Files.write(path.resolveSibling(path.getFileName() + ".attendees"),
+                "Person".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+    try (MappedAvailabilityStore store = MappedAvailabilityStore.open(path)) {
+      Assert.assertEquals(1, store.attendeeId(PERSON_B));
+    }
+
+    try (MappedAvailabilityStore store = MappedAvailabilityStore.open(path)) {
+      Assert.assertEquals(0, store.attendeeId(PERSON_A));
+      Assert.assertEquals(1, store.attendeeId(PERSON_B));
+      Assert.assertEquals(2, store.attendeeId("Person"));
+    }
+  }
+
+  @Test
+  public void minutesOutsideTheDayAreRejected() throws IOException {
+    try (MappedAvailabilityStore store =
+             MappedAvailabilityStore.create(folder.newFile().toPath(), 4, 7)) {
+      store.addAll(EVENTS, 0);
+
+      for (int minute : new int[] {-1, TimeRange.WHOLE_DAY.duration()}) {
+        try {
+          store.isBusy(PERSON_A, 0, minute);
+          Assert.fail("Minute " + minute + " is not within the day");
+        } catch (IllegalArgumentException e) {
+          // Expected.
+        }
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void full() throws IOException {
+    try (MappedAvailabilityStore store =
+             MappedAvailabilityStore.create(folder.newFile().toPath(), 2, 1)) {
+      store.addAll(EVENTS, 0);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void notAStore() throws IOException {
+    MappedAvailabilityStore.open(folder.newFile().toPath());
+  }
+}
@@ -0,0 +1,165 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class QueryPlannerTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+
+  private static final int DURATION_30_MINUTES = 30;
+  private static final int DURATION_60_MINUTES = 60;
+
+  @Test
+  public void everyStrategyGivesTheSameAnswer() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0800AM + 15, DURATION_60_MINUTES),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 3", TimeRange.fromStartDuration(TIME_1000AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_C)),
+        new Event("Event 4", TimeRange.fromStartDuration(TIME_1000AM + 30, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A)));
+
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_C);
+
+    QueryPlanner planner = new QueryPlanner(events);
+    Collection<TimeRange> expected = new FindMeetingQuery().query(events, request);
+
+    for (QueryPlanner.Strategy strategy : QueryPlanner.Strategy.values()) {
+      Assert.assertEquals(strategy.name(), new ArrayList<>(expected),
+                          new ArrayList<>(planner.query(request, strategy)));
+    }
+  }
+
+  @Test
+  public void everyStrategyIgnoresEmptyEvents() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0900AM, 0),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TimeRange.START_OF_DAY, 0),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 3", TimeRange.fromStartDuration(TimeRange.WHOLE_DAY.end(), 0),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 4", TimeRange.fromStartDuration(TIME_1000AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 5", TimeRange.fromStartDuration(TIME_1000AM + DURATION_30_MINUTES, 0),
+            Arrays.asList(PERSON_C)),
+        new Event("Event 6", TimeRange.fromStartDuration(TIME_0800AM, 0),
+            Arrays.asList(PERSON_C)));
+
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_C);
+
+    List<TimeRange> expected = Arrays.asList(
+        TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_1000AM, false),
+        TimeRange.fromStartEnd(TIME_1000AM + DURATION_30_MINUTES, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(expected, new ArrayList<>(new FindMeetingQuery().query(events, request)));
+
+    QueryPlanner planner = new QueryPlanner(events);
+    for (QueryPlanner.Strategy strategy : QueryPlanner.Strategy.values()) {
+      Assert.assertEquals(strategy.name(), expected,
+                          new ArrayList<>(planner.query(request, strategy)));
+    }
+
+    try (ShardedCalendar calendar = new ShardedCalendar(2)) {
+      calendar.addAll(events);
+      Assert.assertEquals(expected, new ArrayList<>(calendar.query(request)));
+    }
+  }
+
+  @Test
+  public void plannerFollowsItsStore() {
+    EventStore store = new EventStore(Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A))));
+    QueryPlanner planner = new QueryPlanner(store);
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_60_MINUTES);
+
+    // Builds the free lists before the store grows, so they have to catch up.
+    planner.query(request, QueryPlanner.Strategy.FREE_LISTS);
+    store.addAll(Arrays.asList(
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_1000AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A))));
+
+    Assert.assertEquals(2, planner.getEventCount());
+
+    List<TimeRange> expected = Arrays.asList(
+        TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0900AM, false),
+        TimeRange.fromStartEnd(TIME_1000AM + DURATION_30_MINUTES, TimeRange.END_OF_DAY, true));
+    for (QueryPlanner.Strategy strategy : QueryPlanner.Strategy.values()) {
+      Assert.assertEquals(strategy.name(), expected,
+                          new ArrayList<>(planner.query(request, strategy)));
+    }
+  }
+
+  @Test
+  public void sparseRequestUsesIntervalSweep() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+
+    Assert.assertEquals(QueryPlanner.Strategy.INTERVAL_SWEEP,
+                        new QueryPlanner(events).plan(request));
+  }
+
+  @Test
+  public void denseRequestUsesMinuteBitmap() {
+    List<Event> events = new ArrayList<>();
+    for (int minute = 0; minute < QueryPlanner.DENSE_EVENT_ESTIMATE * 10; minute += 10) {
+      events.add(new Event("Event " + minute, TimeRange.fromStartDuration(minute, 5),
+                           Arrays.asList(PERSON_A)));
+    }
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+
+    Assert.assertEquals(QueryPlanner.Strategy.MINUTE_BITMAP,
+                        new QueryPlanner(events).plan(request));
+  }
+
+  @Test
+  public void largeCalendarUsesFreeLists() {
+    List<Event> events = new ArrayList<>();
+    for (int i = 0; i < QueryPlanner.LARGE_EVENT_COUNT; ++i) {
+      events.add(new Event("Event " + i, TimeRange.fromStartDuration(TIME_0900AM, 5),
+                           Arrays.asList("Person " + i)));
+    }
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+
+    Assert.assertEquals(QueryPlanner.Strategy.FREE_LISTS, new QueryPlanner(events).plan(request));
+  }
+}
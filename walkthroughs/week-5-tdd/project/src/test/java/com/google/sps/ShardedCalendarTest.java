@@ -0,0 +1,78 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ShardedCalendarTest {
+  private static final int DURATION_30_MINUTES = 30;
+
+  @Test
+  public void shardedAnswersMatchSingleCalendar() {
+    Collection<Event> events = Arrays.asList(Events.events);
+    FindMeetingQuery query = new FindMeetingQuery();
+
+    for (int shardCount = 1; shardCount <= 4; ++shardCount) {
+      try (ShardedCalendar calendar = new ShardedCalendar(shardCount)) {
+        calendar.addAll(events);
+
+        MeetingRequest request = new MeetingRequest(
+            Arrays.asList("Amelia", "Isabella", "Logan", "Noah"), DURATION_30_MINUTES);
+        request.addOptionalAttendee("Emma");
+        request.addOptionalAttendee("Liam");
+
+        Assert.assertEquals(new ArrayList<>(query.query(events, request)),
+                            new ArrayList<>(calendar.query(request)));
+      }
+    }
+  }
+
+  @Test
+  public void followedStoreFeedsTheShards() {
+    EventStore store = new EventStore(Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(0, 60), Arrays.asList("Amelia"))));
+
+    try (ShardedCalendar calendar = new ShardedCalendar(2)) {
+      calendar.follow(store);
+      store.addAll(Arrays.asList(
+          new Event("Event 2", TimeRange.fromStartDuration(120, 60), Arrays.asList("Noah"))));
+
+      MeetingRequest request =
+          new MeetingRequest(Arrays.asList("Amelia", "Noah"), DURATION_30_MINUTES);
+
+      Assert.assertEquals(
+          Arrays.asList(TimeRange.fromStartEnd(60, 120, false),
+                        TimeRange.fromStartEnd(180, TimeRange.END_OF_DAY, true)),
+          new ArrayList<>(calendar.query(request)));
+    }
+  }
+
+  @Test
+  public void unknownAttendeesAreFree() {
+    try (ShardedCalendar calendar = new ShardedCalendar(2)) {
+      MeetingRequest request = new MeetingRequest(Arrays.asList("Nobody"), DURATION_30_MINUTES);
+
+      Assert.assertEquals(Arrays.asList(TimeRange.WHOLE_DAY),
+                          new ArrayList<>(calendar.query(request)));
+    }
+  }
+}
@@ -0,0 +1,183 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class SlotOptimizerTest {
+  private static final Collection<Event> NO_EVENTS = Collections.emptySet();
+
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+  private static final int TIME_1100AM = TimeRange.getTimeInMinutes(11, 0);
+  private static final int TIME_1200PM = TimeRange.getTimeInMinutes(12, 0);
+  private static final int TIME_0200PM = TimeRange.getTimeInMinutes(14, 0);
+
+  private static final int DURATION_30_MINUTES = 30;
+  private static final int DURATION_1_HOUR = 60;
+
+  private SlotOptimizer optimizer;
+
+  @Before
+  public void setUp() {
+    optimizer = new SlotOptimizer();
+  }
+
+  @Test
+  public void noPreferencesPicksEarliestSlot() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TimeRange.START_OF_DAY, TIME_0800AM),
+                  Arrays.asList(PERSON_A)));
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+
+    Assert.assertEquals(TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+                        optimizer.findBestSlot(events, request));
+  }
+
+  @Test
+  public void preferredWindowAndLunch() {
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_1_HOUR);
+    request.addPreferredWindow(TimeRange.fromStartEnd(TIME_1100AM, TIME_0200PM, false));
+    request.setKeepLunchFree(true);
+
+    // 11:00 is in the window and ends right as lunch starts.
+    Assert.assertEquals(TimeRange.fromStartDuration(TIME_1100AM, DURATION_1_HOUR),
+                        optimizer.findBestSlot(NO_EVENTS, request));
+  }
+
+  @Test
+  public void weightedOptionalAttendees() {
+    // B, who matters twice as much as C, can only make it before 10.
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0900AM, false),
+                  Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(TIME_1000AM, TimeRange.END_OF_DAY, true),
+                  Arrays.asList(PERSON_B)),
+        new Event("Event 3", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_1000AM, false),
+                  Arrays.asList(PERSON_C)));
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_B);
+    request.addOptionalAttendee(PERSON_C);
+    request.setAttendeeWeight(PERSON_B, 2);
+
+    Assert.assertEquals(TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+                        optimizer.findBestSlot(events, request));
+
+    request.setAttendeeWeight(PERSON_B, 0.5);
+
+    Assert.assertEquals(TimeRange.fromStartDuration(TIME_1000AM, DURATION_30_MINUTES),
+                        optimizer.findBestSlot(events, request));
+  }
+
+  @Test
+  public void avoidsBackToBack() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0900AM, false),
+                  Arrays.asList(PERSON_A)));
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    request.setAvoidBackToBack(true);
+
+    Assert.assertEquals(
+        TimeRange.fromStartDuration(TIME_0900AM + SlotOptimizer.BACK_TO_BACK_BUFFER,
+                                    DURATION_30_MINUTES),
+        optimizer.findBestSlot(events, request));
+  }
+
+  @Test
+  public void noSlotForMandatoryAttendees() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.WHOLE_DAY, Arrays.asList(PERSON_A)));
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+
+    Assert.assertNull(optimizer.findBestSlot(events, request));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeWeight() {
+    new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES)
+        .setAttendeeWeight(PERSON_B, -1);
+  }
+
+  @Test
+  public void matchesExhaustiveSearch() {
+    Random random = new Random(42);
+    List<String> people = new ArrayList<>();
+    for (int i = 0; i < 12; ++i) {
+      people.add("Person " + i);
+    }
+
+    for (int round = 0; round < 50; ++round) {
+      List<Event> events = new ArrayList<>();
+      for (int i = 0; i < 60; ++i) {
+        int start = random.nextInt(TimeRange.WHOLE_DAY.duration() - 120);
+        events.add(new Event("Event " + i,
+                             TimeRange.fromStartDuration(start, 5 + random.nextInt(115)),
+                             Arrays.asList(people.get(random.nextInt(people.size())))));
+      }
+
+      int duration = 15 + random.nextInt(90);
+      MeetingRequest request = new MeetingRequest(people.subList(0, 2), duration);
+      for (String person : people.subList(2, people.size())) {
+        request.addOptionalAttendee(person);
+        request.setAttendeeWeight(person, random.nextInt(4));
+      }
+      request.addPreferredWindow(TimeRange.fromStartDuration(random.nextInt(1200), 180));
+      request.setAvoidBackToBack(true);
+      request.setKeepLunchFree(round % 2 == 0);
+
+      AttendeeFreeLists freeLists = new AttendeeFreeLists(events.iterator());
+      List<TimeRange> gaps = freeLists.timeTables(request.getAttendees(),
+                                                  request.getOptionalAttendees()).getFirst();
+
+      SlotOptimizer.Scorer exhaustive = new SlotOptimizer.Scorer(request, freeLists);
+      double bestScore = Double.NEGATIVE_INFINITY;
+      int bestStart = -1;
+      int feasibleStarts = 0;
+      for (TimeRange gap : gaps) {
+        for (int start = gap.start(); start + duration <= gap.end(); ++start) {
+          ++feasibleStarts;
+          double score = exhaustive.score(start);
+          if (score > bestScore) {
+            bestScore = score;
+            bestStart = start;
+          }
+        }
+      }
+
+      SlotOptimizer.Scorer scorer = new SlotOptimizer.Scorer(request, freeLists);
+      TimeRange best = optimizer.findBestSlot(scorer, gaps, duration);
+
+      Assert.assertEquals(TimeRange.fromStartDuration(bestStart, duration), best);
+      Assert.assertTrue(scorer.getScoredCount() < feasibleStarts);
+    }
+  }
+}